@@ -0,0 +1,33 @@
+#!/bin/bash
+# Runs the JMH benchmarks of bench/src on the test classes and writes the
+# results to bench_output.json. Extra arguments go to JMH, for example
+#   bench/bench.sh -p domain=POLKA fixpoint
+# Needs the verifier and the test classes compiled to ./bin, as for testall.sh.
+
+JAVA_HOME=/opt/java-latest/bin
+APRON_HOME=/home/sae/apron
+JMH_HOME=/home/sae/jmh # jmh-core, jmh-generator-annprocess, jopt-simple, commons-math3
+
+base=$(pwd)
+
+export CLASSPATH=.:$base/soot-2.5.0.jar:$APRON_HOME/japron/apron.jar:$APRON_HOME/japron/gmp.jar:$base/bin:$base/bench/bin
+for jar in $JMH_HOME/*.jar
+do
+CLASSPATH=$CLASSPATH:$jar
+done
+export LD_LIBRARY_PATH=$APRON_HOME/box:$APRON_HOME/octagons:$APRON_HOME/newpolka:$APRON_HOME/apron:$APRON_HOME/japron:$APRON_HOME/japron/gmp
+
+# The annotation processor generates the JMH harness next to the benchmarks
+mkdir -p $base/bench/bin
+$JAVA_HOME/javac -d $base/bench/bin $(find $base/bench/src -name '*.java') || exit 1
+
+corpus=""
+# plus the classes of bench/generate.sh, if it ran
+for f in $base/src/TOOB_*.java $base/src/TND_*.java $(ls $base/bench/gen/*.java 2>/dev/null)
+do
+corpus="$corpus,$(basename $f .java)"
+done
+
+$JAVA_HOME/java org.openjdk.jmh.Main -p analyzedClass=${corpus#,} \
+	-jvmArgsAppend "-Djava.library.path=$LD_LIBRARY_PATH" \
+	-rf json -rff $base/bench_output.json "$@"
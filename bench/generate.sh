@@ -0,0 +1,33 @@
+#!/bin/bash
+# Writes a scaling corpus of generated classes to bench/gen and compiles it
+# to bench/bin, where bench/bench.sh picks it up. Each series doubles one
+# setting of ProgramGenerator and keeps the others at their defaults. The
+# expected verdict of every class is in its first line.
+
+JAVA_HOME=/opt/java-latest/bin
+
+base=$(pwd)
+gen=$base/bench/gen
+
+mkdir -p $base/bench/bin $gen
+$JAVA_HOME/javac -d $base/bench/bin $base/bench/src/ch/ethz/sae/ProgramGenerator.java || exit 1
+generate() {
+	$JAVA_HOME/java -cp $base/bench/bin ch.ethz.sae.ProgramGenerator "$@" || exit 1
+}
+
+rm -f $gen/*.java
+for n in 1 2 4 8 16 32 64
+do
+generate -methods $n GEN_Methods$n $gen
+generate -methods 1 -locals $n GEN_Locals$n $gen
+generate -methods 1 -statements $n -branches 0.5 GEN_Branches$n $gen
+generate -methods 1 -arrays $n -aliasing 0.8 GEN_Aliasing$n $gen
+done
+for d in 0 1 2 3 4 5
+do
+generate -methods 1 -depth $d GEN_Depth$d $gen
+done
+generate -verdict may-bounds GEN_MayBounds $gen
+generate -verdict may-div GEN_MayDiv $gen
+
+$JAVA_HOME/javac -d $base/bench/bin $base/src/PrinterArray.java $gen/*.java
@@ -0,0 +1,196 @@
+package ch.ethz.sae;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import apron.Abstract1;
+import apron.ApronException;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.IfStmt;
+import soot.jimple.spark.pag.PAG;
+import soot.toolkits.graph.BriefUnitGraph;
+
+/*
+ * Hot paths of the verifier on one class of the corpus in one domain: the
+ * fixpoints of its methods, the interval tier, the two checkers, Spark, and
+ * the APRON calls behind joins, widenings and the guards of if statements.
+ * bench/bench.sh passes the corpus as the analyzedClass parameter; JMH forks
+ * a JVM per class and domain, so Soot and APRON state never leaks between
+ * them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalyzerBench {
+
+	/* The class, loaded once per fork, with Spark and solved fixpoints of its methods. */
+	@State(Scope.Thread)
+	public static class Corpus {
+		@Param({ "TOOB_No1" })
+		public String analyzedClass;
+
+		@Param({ "BOX", "OCTAGON", "POLKA" })
+		public String domain;
+
+		SootClass c;
+		PAG pointsTo;
+		AllocationIndex allocations;
+		List<SootMethod> methods = new ArrayList<SootMethod>();
+		List<Analysis> solved = new ArrayList<Analysis>();
+		List<CheckSiteIndex> indices = new ArrayList<CheckSiteIndex>();
+
+		// states on the two sides of every if statement, with their analysis
+		List<Analysis> owners = new ArrayList<Analysis>();
+		List<Unit> guards = new ArrayList<Unit>();
+		List<Abstract1[]> before = new ArrayList<Abstract1[]>();
+		List<Abstract1[]> fall = new ArrayList<Abstract1[]>();
+		List<Abstract1[]> branch = new ArrayList<Abstract1[]>();
+
+		@Setup(Level.Trial)
+		public void load() throws ApronException {
+			c = Verifier.loadClass(analyzedClass);
+			HashMap<SootMethod, AllocationSites> sites = new HashMap<SootMethod, AllocationSites>();
+			for (SootMethod m : c.getMethods()) {
+				if (m.isConcrete()) {
+					methods.add(m);
+					sites.put(m, AllocationSites.compute(m.retrieveActiveBody()));
+				}
+			}
+			pointsTo = Verifier.doPointsToAnalysis(c);
+			allocations = AllocationIndex.build(sites);
+
+			for (SootMethod m : methods) {
+				Analysis a = analysis(this, m);
+				a.run();
+				solved.add(a);
+				indices.add(new CheckSiteIndex(m.retrieveActiveBody(),
+						new Checker[] { new BoundsChecker(pointsTo, allocations), new DivisionChecker() }));
+				for (Unit u : m.retrieveActiveBody().getUnits()) {
+					if (!(u instanceof IfStmt) || a.getFlowBefore(u).isBottom()) {
+						continue;
+					}
+					owners.add(a);
+					guards.add(u);
+					before.add(a.getFlowBefore(u).get());
+					fall.add(a.getFallFlowAfter(u).get());
+					branch.add(a.getBranchFlowAfter(u).get(0).get());
+				}
+			}
+		}
+	}
+
+	/* Unsolved analyses of every method, the fixpoint changes them. */
+	@State(Scope.Thread)
+	public static class Fresh {
+		List<Analysis> analyses = new ArrayList<Analysis>();
+		List<IntervalAnalysis> intervals = new ArrayList<IntervalAnalysis>();
+
+		@Setup(Level.Invocation)
+		public void build(Corpus corpus) {
+			analyses.clear();
+			intervals.clear();
+			for (SootMethod m : corpus.methods) {
+				analyses.add(analysis(corpus, m));
+				intervals.add(new IntervalAnalysis(new BriefUnitGraph(m.retrieveActiveBody()), null));
+			}
+		}
+	}
+
+	static Analysis analysis(Corpus corpus, SootMethod m) {
+		return new Analysis(new BriefUnitGraph(m.retrieveActiveBody()), corpus.c,
+				Domain.valueOf(corpus.domain), new VerifierOptions(), null);
+	}
+
+	@Benchmark
+	public void fixpoint(Fresh fresh, Blackhole bh) {
+		for (Analysis a : fresh.analyses) {
+			a.run();
+			bh.consume(a);
+		}
+	}
+
+	/* The fixpoints of the interval tier, the same for every domain parameter. */
+	@Benchmark
+	public void intervals(Fresh fresh, Blackhole bh) {
+		for (IntervalAnalysis a : fresh.intervals) {
+			a.run();
+			bh.consume(a);
+		}
+	}
+
+	@Benchmark
+	public void bounds(Corpus corpus, Blackhole bh) {
+		for (int i = 0; i < corpus.methods.size(); i++) {
+			Checker[] checkers = { new BoundsChecker(corpus.pointsTo, corpus.allocations), null };
+			bh.consume(corpus.indices.get(i).check(corpus.solved.get(i), checkers));
+		}
+	}
+
+	@Benchmark
+	public void division(Corpus corpus, Blackhole bh) {
+		for (int i = 0; i < corpus.methods.size(); i++) {
+			Checker[] checkers = { null, new DivisionChecker() };
+			bh.consume(corpus.indices.get(i).check(corpus.solved.get(i), checkers));
+		}
+	}
+
+	@Benchmark
+	@Measurement(iterations = 3)
+	public PAG spark(Corpus corpus) {
+		return Verifier.doPointsToAnalysis(corpus.c);
+	}
+
+	/* The guard of every if statement, as the fixpoint applies it. */
+	@Benchmark
+	public void meet(Corpus corpus, Blackhole bh) throws ApronException {
+		for (int i = 0; i < corpus.guards.size(); i++) {
+			Analysis a = corpus.owners.get(i);
+			bh.consume(a.transferOf(corpus.guards.get(i)).apply(a, corpus.before.get(i)));
+		}
+	}
+
+	/* The join where the two sides of every if statement merge again. */
+	@Benchmark
+	public void join(Corpus corpus, Blackhole bh) throws ApronException {
+		for (int i = 0; i < corpus.guards.size(); i++) {
+			Abstract1[] f = corpus.fall.get(i);
+			Abstract1[] b = corpus.branch.get(i);
+			for (int p = 0; p < f.length; p++) {
+				bh.consume(f[p].joinCopy(corpus.owners.get(i).man, b[p]));
+			}
+		}
+	}
+
+	/* Widening of the state before every if statement by the one after its branch. */
+	@Benchmark
+	public void widening(Corpus corpus, Blackhole bh) throws ApronException {
+		for (int i = 0; i < corpus.guards.size(); i++) {
+			Abstract1[] in = corpus.before.get(i);
+			Abstract1[] b = corpus.branch.get(i);
+			for (int p = 0; p < in.length; p++) {
+				// the branch state is included in the state before the if
+				bh.consume(b[p].widening(corpus.owners.get(i).man, in[p]));
+			}
+		}
+	}
+}
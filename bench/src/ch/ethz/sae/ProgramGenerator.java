@@ -0,0 +1,211 @@
+package ch.ethz.sae;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+/*
+ * Writes test classes in the style of the TOOB_* and TND_* ones, scaled up:
+ * methods with nested counting loops, branches on int locals, integer
+ * divisions and sendJob calls on PrinterArrays that alias each other. Every
+ * check is safe by construction unless the expected verdict asks for an
+ * error, which is then added once as a real one, so the verdict is known.
+ *
+ *   java ch.ethz.sae.ProgramGenerator [options] <class name> <output dir>
+ */
+public class ProgramGenerator {
+
+	public static final String USAGE =
+			"Usage: java ch.ethz.sae.ProgramGenerator [options] <class name> <output dir>\n"
+			+ "  -methods <n>    methods of the class (default 4)\n"
+			+ "  -locals <n>     int locals per method besides the loop counters (default 4)\n"
+			+ "  -depth <n>      nesting depth of the loops (default 1)\n"
+			+ "  -statements <n> statements per loop body (default 4)\n"
+			+ "  -branches <p>   probability that a statement is an if/else (default 0.3)\n"
+			+ "  -arrays <n>     PrinterArrays per method (default 2)\n"
+			+ "  -aliasing <p>   probability of a reference copy after each sendJob (default 0.3)\n"
+			+ "  -verdict <v>    no (default), may-bounds, may-div or may\n"
+			+ "  -seed <n>       seed of the random choices (default 0)";
+
+	// every loop runs this often, so the counters are in [0, LOOP_BOUND - 1]
+	static final int LOOP_BOUND = 10;
+
+	int methods = 4;
+	int locals = 4;
+	int depth = 1;
+	int statements = 4;
+	double branches = 0.3;
+	int arrays = 2;
+	double aliasing = 0.3;
+	boolean mayBounds = false;
+	boolean mayDiv = false;
+	long seed = 0;
+
+	private Random random;
+	private StringBuilder out;
+
+	public static void main(String[] args) throws IOException {
+		ProgramGenerator gen = new ProgramGenerator();
+		String name = null;
+		File dir = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (!arg.startsWith("-")) {
+					if (name == null) {
+						name = arg;
+					} else {
+						dir = new File(arg);
+					}
+					continue;
+				}
+				if (++i == args.length) {
+					throw new IllegalArgumentException(arg);
+				}
+				if (arg.equals("-methods")) {
+					gen.methods = Integer.parseInt(args[i]);
+				} else if (arg.equals("-locals")) {
+					gen.locals = Integer.parseInt(args[i]);
+				} else if (arg.equals("-depth")) {
+					gen.depth = Integer.parseInt(args[i]);
+				} else if (arg.equals("-statements")) {
+					gen.statements = Integer.parseInt(args[i]);
+				} else if (arg.equals("-branches")) {
+					gen.branches = Double.parseDouble(args[i]);
+				} else if (arg.equals("-arrays")) {
+					gen.arrays = Integer.parseInt(args[i]);
+				} else if (arg.equals("-aliasing")) {
+					gen.aliasing = Double.parseDouble(args[i]);
+				} else if (arg.equals("-verdict")) {
+					gen.mayBounds = args[i].equals("may-bounds") || args[i].equals("may");
+					gen.mayDiv = args[i].equals("may-div") || args[i].equals("may");
+					if (!gen.mayBounds && !gen.mayDiv && !args[i].equals("no")) {
+						throw new IllegalArgumentException(args[i]);
+					}
+				} else if (arg.equals("-seed")) {
+					gen.seed = Long.parseLong(args[i]);
+				} else {
+					throw new IllegalArgumentException(arg);
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			name = null;
+		}
+		if (name == null || dir == null || gen.methods < 1 || gen.locals < 1 || gen.depth < 0
+				|| gen.arrays < 1) {
+			System.err.println(USAGE);
+			System.exit(-1);
+		}
+
+		dir.mkdirs();
+		Writer w = new FileWriter(new File(dir, name + ".java"));
+		try {
+			w.write(gen.generate(name));
+		} finally {
+			w.close();
+		}
+	}
+
+	/* The source of the class, the same for the same settings and seed. */
+	public String generate(String name) {
+		random = new Random(seed);
+		out = new StringBuilder();
+		out.append("// result ").append(mayDiv ? "MAY_DIV_ZERO" : "NO_DIV_ZERO").append(' ')
+				.append(mayBounds ? "MAY_OUT_OF_BOUNDS" : "NO_OUT_OF_BOUNDS").append('\n');
+		out.append("public class ").append(name).append(" {\n");
+		for (int m = 0; m < methods; m++) {
+			if (m > 0) {
+				out.append('\n');
+			}
+			method(m);
+		}
+		out.append("}\n");
+		return out.toString();
+	}
+
+	private void method(int m) {
+		out.append("\tpublic static void m").append(m).append("(int x) {\n");
+		for (int v = 0; v < locals; v++) {
+			line(2, "int v" + v + " = " + (v == 0 ? "x" : String.valueOf(random.nextInt(LOOP_BOUND))) + ";");
+		}
+		// every array is large enough for every loop counter
+		for (int a = 0; a < arrays; a++) {
+			line(2, "PrinterArray pa" + a + " = new PrinterArray(" + (LOOP_BOUND + random.nextInt(LOOP_BOUND)) + ");");
+		}
+		loop(0, 2);
+
+		// the requested errors go to the first method only
+		if (m == 0 && mayBounds) {
+			line(2, "pa0.sendJob(" + (2 * LOOP_BOUND) + ");");
+		}
+		if (m == 0 && mayDiv) {
+			line(2, "int zero = 0;");
+			line(2, "v0 = v0 / zero;");
+		}
+		out.append("\t}\n");
+	}
+
+	private void loop(int level, int indent) {
+		if (level == depth) {
+			for (int s = 0; s < statements; s++) {
+				statement(level, indent);
+			}
+			return;
+		}
+		String i = "i" + level;
+		line(indent, "for (int " + i + " = 0; " + i + " < " + LOOP_BOUND + "; " + i + "++) {");
+		statement(level + 1, indent + 1);
+		loop(level + 1, indent + 1);
+		line(indent, "}");
+	}
+
+	private void statement(int level, int indent) {
+		if (random.nextDouble() < branches) {
+			line(indent, "if (" + local() + " < " + local() + ") {");
+			simple(level, indent + 1);
+			line(indent, "} else {");
+			simple(level, indent + 1);
+			line(indent, "}");
+		} else {
+			simple(level, indent);
+		}
+	}
+
+	/* An assignment, a safe division or a safe sendJob. */
+	private void simple(int level, int indent) {
+		int kind = random.nextInt(3);
+		if (kind == 0) {
+			line(indent, local() + " = " + local() + (random.nextBoolean() ? " + " : " - ") + local() + ";");
+		} else if (kind == 1) {
+			// counters are at least 0, so the divisor is at least 1
+			String divisor = level > 0 ? "(" + counter(level) + " + 1)" : String.valueOf(1 + random.nextInt(9));
+			line(indent, local() + " = " + local() + " / " + divisor + ";");
+		} else {
+			int array = random.nextInt(arrays);
+			String index = level > 0 ? counter(level) : String.valueOf(random.nextInt(LOOP_BOUND));
+			line(indent, "pa" + array + ".sendJob(" + index + ");");
+			if (arrays > 1 && random.nextDouble() < aliasing) {
+				int other = (array + 1 + random.nextInt(arrays - 1)) % arrays;
+				line(indent, "pa" + array + " = pa" + other + ";");
+			}
+		}
+	}
+
+	private String local() {
+		return "v" + random.nextInt(locals);
+	}
+
+	/* One of the counters of the enclosing loops. */
+	private String counter(int level) {
+		return "i" + random.nextInt(level);
+	}
+
+	private void line(int indent, String s) {
+		for (int i = 0; i < indent; i++) {
+			out.append('\t');
+		}
+		out.append(s).append('\n');
+	}
+}
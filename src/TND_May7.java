@@ -0,0 +1,8 @@
+// result MAY_DIV_ZERO
+public class TND_May7 {
+	public static void foo() {
+		int m = 7;
+		int d = m >> 3;
+		int a = 10 / d;
+	}
+}
@@ -0,0 +1,8 @@
+// result MAY_DIV_ZERO
+public class TND_May8 {
+	public static void foo() {
+		int m = 8;
+		int r = m % 4;
+		int a = 10 / r;
+	}
+}
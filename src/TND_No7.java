@@ -0,0 +1,13 @@
+// result NO_DIV_ZERO
+public class TND_No7 {
+	public static void foo(int n) {
+		int d = 2;
+		if (n > 5) {
+			d = n - 3;
+		}
+		int a = 100 / d;
+		for (int i = 1; i < n; i++) {
+			a = a + 100 / i;
+		}
+	}
+}
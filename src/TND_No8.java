@@ -0,0 +1,12 @@
+// result NO_DIV_ZERO
+public class TND_No8 {
+	public static void foo(int n) {
+		int a = 0;
+		if (n >= 0 && n != 0) {
+			a = 7 / n;
+		}
+		if (n <= 0 && n != 0) {
+			a = 7 / n;
+		}
+	}
+}
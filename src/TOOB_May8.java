@@ -0,0 +1,9 @@
+// result MAY_OUT_OF_BOUNDS
+public class TOOB_May8 {
+	public static void foo() {
+		PrinterArray pa = new PrinterArray(4);
+		int m = 1;
+		int i = m << 2;
+		pa.sendJob(i);
+	}
+}
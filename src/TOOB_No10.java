@@ -0,0 +1,12 @@
+// result NO_OUT_OF_BOUNDS
+public class TOOB_No10 {
+	public static void foo(int n) {
+		PrinterArray pa = new PrinterArray(10);
+		for (int i = 0; i < 10; i++) {
+			pa.sendJob(i);
+		}
+		if (n >= 0 && n <= 10 && n != 10) {
+			pa.sendJob(n);
+		}
+	}
+}
@@ -0,0 +1,14 @@
+// result NO_OUT_OF_BOUNDS
+// options -summaries
+public class TOOB_No9 {
+	static int next(int i) {
+		return i + 1;
+	}
+
+	public static void foo() {
+		PrinterArray pa = new PrinterArray(5);
+		int i = next(2);
+		pa.sendJob(i);
+		pa.sendJob(next(i));
+	}
+}
@@ -3,20 +3,25 @@ import apron.*;
 
 public class AWrapper {
 
-	Abstract1 elem;
+	Abstract1[] elems; // one element per pack
 	Manager man;
+	Packing packing;
 	Object statement;
 
-	public AWrapper(Abstract1 e) {
-		elem = e;
+	public AWrapper(Abstract1[] e) {
+		elems = e;
 	}
 
-	public Abstract1 get() {
-		return elem;
+	public Abstract1[] get() {
+		return elems;
 	}
 
-	public void set(Abstract1 e) {
-		elem = e;
+	public void set(Abstract1[] e) {
+		elems = e;
+	}
+
+	public Abstract1 get(int pack) {
+		return elems[pack];
 	}
 
 	public Object getStatement() {
@@ -28,14 +33,41 @@ public class AWrapper {
 	}
 
 	public void copy(AWrapper src) {
-		this.elem = src.get();
+		this.elems = src.get().clone();
 		this.statement = src.statement;
 	}
 
+	/* The state is unreachable as soon as one of its packs is. */
+	public boolean isBottom() throws ApronException {
+		for (Abstract1 e : elems) {
+			if (e.isBottom(man))
+				return true;
+		}
+		return false;
+	}
+
+	public Interval getBound(String var) throws ApronException {
+		int pack = packing.packOf(var);
+		if (pack < 0) {
+			Interval top = new Interval();
+			top.setTop();
+			return top;
+		}
+		return elems[pack].getBound(man, var);
+	}
+
+	/* Packs passed through unchanged are the same objects, only the others need a native call. */
 	public boolean equals(Object o) {
-		Abstract1 t = ((AWrapper) o).get();
+		Abstract1[] t = ((AWrapper) o).get();
+		if (t == elems) {
+			return true;
+		}
 		try {
-			return elem.isIncluded(man, t);
+			for (int i = 0; i < elems.length; i++) {
+				if (elems[i] != t[i] && !elems[i].isIncluded(man, t[i]))
+					return false;
+			}
+			return true;
 		} catch (ApronException e) {
 			System.err.println("isEqual failed");
 			System.exit(-1);
@@ -43,12 +75,22 @@ public class AWrapper {
 		return false;
 	}
 
+	/* Equal states can be different objects, only their layout is the same. */
+	public int hashCode() {
+		return elems == null ? 0 : elems.length;
+	}
+
 	public String toString() {
 		try {
-			if (elem.isTop(man))
+			StringBuilder sb = new StringBuilder();
+			for (Abstract1 e : elems) {
+				if (!e.isTop(man))
+					sb.append(e.toString());
+			}
+			if (sb.length() == 0)
 				return "<Top>";
 
-			return elem.toString();
+			return sb.toString();
 		} catch (ApronException e) {
 			System.err.println("toString failed");
 			System.exit(-1);
@@ -0,0 +1,76 @@
+package ch.ethz.sae;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import soot.Local;
+import soot.Value;
+import soot.jimple.IntConstant;
+import soot.jimple.NewExpr;
+import soot.jimple.Stmt;
+import soot.jimple.internal.JSpecialInvokeExpr;
+
+/*
+ * The PrinterArray allocation sites of a class and the valid indices of the
+ * arrays they allocate, keyed by the new expression (what a Spark AllocNode
+ * stands for, see AllocNode.getNewExpr). Built once per class and never
+ * changed afterwards, so all threads can read it without locking.
+ */
+public final class AllocationIndex {
+
+	// valid indices of the sites constructed with a constant size
+	private final Map<Object, Range> ranges;
+
+	// site allocated by every constructor call that has exactly one
+	private final Map<Stmt, Object> allocations;
+
+	private AllocationIndex(Map<Object, Range> ranges, Map<Stmt, Object> allocations) {
+		this.ranges = Collections.unmodifiableMap(ranges);
+		this.allocations = Collections.unmodifiableMap(allocations);
+	}
+
+	public static AllocationIndex build(Map<?, AllocationSites> methods) {
+		HashMap<Object, Range> ranges = new HashMap<Object, Range>();
+		HashMap<Stmt, Object> allocations = new HashMap<Stmt, Object>();
+		HashMap<Object, Integer> constructed = new HashMap<Object, Integer>();
+
+		for (AllocationSites sites : methods.values()) {
+			for (Stmt init : sites.constructors()) {
+				Local base = (Local) ((JSpecialInvokeExpr) init.getInvokeExpr()).getBase();
+				Set<NewExpr> s = sites.sitesOf(base);
+				if (!sites.isResolved(base) || s.size() != 1) {
+					continue;
+				}
+				NewExpr site = s.iterator().next();
+				allocations.put(init, site);
+				Integer count = constructed.get(site);
+				constructed.put(site, count == null ? 1 : count + 1);
+
+				Value size = init.getInvokeExpr().getArg(0);
+				if (size instanceof IntConstant) {
+					ranges.put(site, new Range(0, ((IntConstant) size).value - 1));
+				}
+			}
+		}
+
+		// a site with several constructor calls has no single size
+		for (Object site : constructed.keySet()) {
+			if (constructed.get(site) > 1) {
+				ranges.remove(site);
+			}
+		}
+		return new AllocationIndex(ranges, allocations);
+	}
+
+	/* Valid indices of the site if its size is a constant, null otherwise. */
+	public Range rangeOf(Object site) {
+		return ranges.get(site);
+	}
+
+	/* The site a constructor call initialises, null if it is not known. */
+	public Object allocationOf(Stmt init) {
+		return allocations.get(init);
+	}
+}
@@ -0,0 +1,135 @@
+package ch.ethz.sae;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import soot.Body;
+import soot.Local;
+import soot.RefType;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.CastExpr;
+import soot.jimple.DefinitionStmt;
+import soot.jimple.NewExpr;
+import soot.jimple.NullConstant;
+import soot.jimple.Stmt;
+import soot.jimple.internal.JSpecialInvokeExpr;
+import soot.jimple.internal.JVirtualInvokeExpr;
+
+/*
+ * Intraprocedural, flow insensitive allocation sites of the reference locals
+ * of a method. A local is resolved if all its values come from allocations in
+ * the method, through copies and casts. Values from parameters, fields, calls
+ * or arrays make it unresolved, so the verifier needs Spark for it.
+ */
+public class AllocationSites {
+
+	private final HashMap<Local, Set<NewExpr>> sites = new HashMap<Local, Set<NewExpr>>();
+	private final Set<Local> unresolved = new HashSet<Local>();
+	private final List<Stmt> constructors = new ArrayList<Stmt>();
+	private final List<Local> receivers = new ArrayList<Local>();
+
+	private AllocationSites() {
+	}
+
+	public static AllocationSites compute(Body body) {
+		AllocationSites a = new AllocationSites();
+
+		// copy edges from the right to the left local
+		HashMap<Local, List<Local>> copies = new HashMap<Local, List<Local>>();
+		for (Unit u : body.getUnits()) {
+			if (!(u instanceof DefinitionStmt)) {
+				continue;
+			}
+			Value left = ((DefinitionStmt) u).getLeftOp();
+			Value right = ((DefinitionStmt) u).getRightOp();
+			if (!(left instanceof Local) || !(left.getType() instanceof RefType)) {
+				continue;
+			}
+			if (right instanceof CastExpr) {
+				right = ((CastExpr) right).getOp();
+			}
+			if (right instanceof NewExpr) {
+				a.sitesOf((Local) left, true).add((NewExpr) right);
+			} else if (right instanceof Local) {
+				List<Local> targets = copies.get(right);
+				if (targets == null) {
+					targets = new ArrayList<Local>();
+					copies.put((Local) right, targets);
+				}
+				targets.add((Local) left);
+			} else if (!(right instanceof NullConstant)) {
+				a.unresolved.add((Local) left);
+			}
+		}
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (Local from : copies.keySet()) {
+				for (Local to : copies.get(from)) {
+					changed |= a.sitesOf(to, true).addAll(a.sitesOf(from, true));
+					if (a.unresolved.contains(from)) {
+						changed |= a.unresolved.add(to);
+					}
+				}
+			}
+		}
+
+		for (Unit u : body.getUnits()) {
+			if (!((Stmt) u).containsInvokeExpr()) {
+				continue;
+			}
+			Value e = ((Stmt) u).getInvokeExpr();
+			if (e instanceof JSpecialInvokeExpr
+					&& ((JSpecialInvokeExpr) e).getMethod().getDeclaringClass().toString()
+							.equals(Analysis.resourceArrayName)) {
+				a.constructors.add((Stmt) u);
+			} else if (e instanceof JVirtualInvokeExpr
+					&& ((JVirtualInvokeExpr) e).getMethod().getName().equals(Analysis.functionName)) {
+				a.receivers.add((Local) ((JVirtualInvokeExpr) e).getBase());
+			}
+		}
+		return a;
+	}
+
+	private Set<NewExpr> sitesOf(Local l, boolean create) {
+		Set<NewExpr> s = sites.get(l);
+		if (s == null) {
+			if (!create) {
+				return Collections.emptySet();
+			}
+			s = new HashSet<NewExpr>();
+			sites.put(l, s);
+		}
+		return s;
+	}
+
+	/* True if every value of the local is allocated in the method. */
+	public boolean isResolved(Local l) {
+		return !unresolved.contains(l);
+	}
+
+	/* True if all sendJob receivers of the method are resolved. */
+	public boolean isComplete() {
+		for (Local l : receivers) {
+			if (!isResolved(l)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public Set<NewExpr> sitesOf(Local l) {
+		return Collections.unmodifiableSet(sitesOf(l, false));
+	}
+
+	/* The PrinterArray constructor calls of the method. */
+	public List<Stmt> constructors() {
+		return Collections.unmodifiableList(constructors);
+	}
+}
@@ -1,18 +1,30 @@
 package ch.ethz.sae;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 
 import apron.Abstract0;
 import apron.Abstract1;
 import apron.ApronException;
 import apron.Environment;
 import apron.Interval;
+import apron.Lincons1;
+import apron.Linexpr1;
+import apron.Linterm1;
 import apron.Manager;
 import apron.MpqScalar;
-import apron.Polka;
+import apron.Scalar;
 import apron.Tcons1;
 import apron.Texpr1BinNode;
 import apron.Texpr1CstNode;
@@ -24,14 +36,19 @@ import soot.DoubleType;
 import soot.IntegerType;
 import soot.Local;
 import soot.RefType;
+import soot.Scene;
 import soot.SootClass;
 import soot.SootField;
+import soot.SootMethod;
 import soot.Unit;
+import soot.UnitBox;
 import soot.Value;
 import soot.jimple.DefinitionStmt;
 import soot.jimple.IfStmt;
 import soot.jimple.IntConstant;
 import soot.jimple.InvokeExpr;
+import soot.jimple.ParameterRef;
+import soot.jimple.ReturnStmt;
 import soot.jimple.Stmt;
 import soot.jimple.internal.AbstractBinopExpr;
 import soot.jimple.internal.JAddExpr;
@@ -46,19 +63,40 @@ import soot.jimple.internal.JLeExpr;
 import soot.jimple.internal.JLtExpr;
 import soot.jimple.internal.JMulExpr;
 import soot.jimple.internal.JNeExpr;
+import soot.jimple.internal.JSpecialInvokeExpr;
 import soot.jimple.internal.JSubExpr;
 import soot.jimple.internal.JimpleLocal;
 import soot.jimple.toolkits.annotation.logic.Loop;
+import soot.jimple.toolkits.callgraph.Edge;
 import soot.toolkits.graph.LoopNestTree;
 import soot.toolkits.graph.UnitGraph;
-import soot.toolkits.scalar.ForwardBranchedFlowAnalysis;
 import soot.util.Chain;
 
-public class Analysis extends ForwardBranchedFlowAnalysis<AWrapper> {
+public class Analysis extends MethodAnalysis<AWrapper> {
 	
-	private static final int WIDENING_THRESHOLD = 6;
+	// Loop heads join at most this often before widening
+	static final int WIDENING_THRESHOLD = 6;
+
+	// Joins in a row that move a bound of an innermost loop head before it widens,
+	// enclosing loops wait one more per inner loop
+	static final int WIDENING_DELAY = 2;
+
+	// Descending iterations after the widened fixpoint
+	static final int NARROWING_STEPS = 2;
 	
-	private HashMap<Unit, Counter> loopHeads, backJumps;
+	private HashMap<Unit, Counter> loopHeads;
+
+	// Units whose state before them is kept after the fixpoint, null for all
+	Collection<? extends Unit> keep = null;
+
+	// Store only the states at loop heads, kept units and the frontier of the fixpoint
+	boolean sparse = false;
+	private List<Wto.Element> wto;
+	private HashMap<Unit, Integer> order; // position in the ordering, if sparse
+	private HashMap<Unit, Unit> lastReader; // successor that reads the states after a unit last, if sparse
+
+	// Measure the largest state at a loop head, see headConstraints
+	boolean measureLoopHeads = false;
 
 	private void recordIntLocalVars() {
 
@@ -125,34 +163,313 @@ public class Analysis extends ForwardBranchedFlowAnalysis<AWrapper> {
 			ints[local_ints.length + i] = class_ints[i];
 		}
 
-		env = new Environment(ints, reals);
+		if (summarize) {
+			// the parameters keep their entry values, the summary relates them to ret$
+			SootMethod m = g.getBody().getMethod();
+			ArrayList<String> vars = new ArrayList<String>();
+			for (int i = 0; i < m.getParameterCount(); i++) {
+				if (m.getParameterType(i) instanceof IntegerType) {
+					vars.add(Summaries.param(i));
+				}
+			}
+			vars.add(Summaries.RET);
+			summaryVars = vars.toArray(new String[0]);
+			ints = Arrays.copyOf(ints, ints.length + summaryVars.length);
+			System.arraycopy(summaryVars, 0, ints, ints.length - summaryVars.length, summaryVars.length);
+		}
+
+		if (slice != null) {
+			ArrayList<String> sliced = new ArrayList<String>();
+			for (String var : ints) {
+				if (slice.containsVar(var)) {
+					sliced.add(var);
+				}
+			}
+			ints = sliced.toArray(new String[0]);
+		}
+
+		if (opts.packing) {
+			packing = Packing.compute(g.getBody(), ints);
+		} else {
+			packing = Packing.single(ints);
+		}
+
+		envs = new Environment[packing.size()];
+		for (int i = 0; i < envs.length; i++) {
+			envs[i] = new Environment(packing.vars(i), reals);
+		}
 	}
 
 	/* Instantiate a domain. */
 	private void instantiateDomain() {
-		man = new Polka(true);
+		man = domain.newManager();
+		// set once for all transfer functions of the method
+		man.setAlgorithm(Manager.FUNID_MEET, Integer.MAX_VALUE);
+		man.setAlgorithm(Manager.FUNID_MEET_TCONS_ARRAY, Integer.MAX_VALUE);
+		man.setAlgorithm(Manager.FUNID_ASSIGN_TEXPR_ARRAY, Integer.MAX_VALUE);
 	}
 
 	/* === Constructor === */
 	public Analysis(UnitGraph g, SootClass jc) {
-		super(g);
+		this(g, jc, Domain.POLKA, new VerifierOptions(), null);
+	}
+
+	public Analysis(UnitGraph g, SootClass jc, Domain domain, VerifierOptions opts, Slice slice) {
+		this(g, jc, domain, opts, slice, null);
+	}
+
+	/*
+	 * If a slice is given, only its variables and statements are analysed. If
+	 * summaries are given, they replace the results of the calls they cover.
+	 */
+	public Analysis(UnitGraph g, SootClass jc, Domain domain, VerifierOptions opts, Slice slice,
+			Summaries summaries) {
+		this(g, jc, domain, opts, slice, summaries, false);
+	}
+
+	/* Analysis of a callee that also tracks its parameters and return value. */
+	static Analysis forSummary(UnitGraph g, SootClass jc, Domain domain, Summaries summaries) {
+		return new Analysis(g, jc, domain, new VerifierOptions(), null, summaries, true);
+	}
+
+	private Analysis(UnitGraph g, SootClass jc, Domain domain, VerifierOptions opts, Slice slice,
+			Summaries summaries, boolean summarize) {
+		super(g, domain);
 
 		this.g = g;
 		this.jclass = jc;
+		this.opts = opts;
+		this.slice = slice;
+		this.summarize = summarize;
 
 		buildEnvironment();
 		instantiateDomain();
 
+		// Call targets are resolved here, Soot must not be used by the workers
+		callSummaries = new HashMap<Unit, Lincons1[]>();
+		if (summaries != null) {
+			for (Unit u : g.getBody().getUnits()) {
+				if (!(u instanceof DefinitionStmt) || !((Stmt) u).containsInvokeExpr()
+						|| !(((DefinitionStmt) u).getLeftOp().getType() instanceof IntegerType)) {
+					continue;
+				}
+				Iterator<Edge> edges = Scene.v().getCallGraph().edgesOutOf(u);
+				if (!edges.hasNext()) {
+					continue;
+				}
+				Lincons1[] summary = summaries.get(edges.next().tgt());
+				if (summary != null && !edges.hasNext()) {
+					callSummaries.put(u, summary);
+				}
+			}
+		}
+
 		loopHeads = new HashMap<Unit, Counter>();
-		backJumps = new HashMap<Unit, Counter>();
-		for (Loop l : new LoopNestTree(g.getBody())) {
-			loopHeads.put(l.getHead(), new Counter(0));
-			backJumps.put(l.getBackJumpStmt(), new Counter(0));
+		List<Loop> loops = new ArrayList<Loop>(new LoopNestTree(g.getBody()));
+		for (Loop l : loops) {
+			// inner loops have to stabilise first, widening the outer loop early loses their bounds
+			int inner = 0;
+			for (Loop other : loops) {
+				if (other != l && l.getLoopStatements().contains(other.getHead())) {
+					inner++;
+				}
+			}
+			Counter head = new Counter(0);
+			head.delay = Math.min(WIDENING_DELAY + inner, WIDENING_THRESHOLD);
+			loopHeads.put(l.getHead(), head);
+		}
+		thresholds = buildThresholds();
+
+		transfers = new HashMap<Unit, Transfer>();
+		for (Unit u : g.getBody().getUnits()) {
+			transfers.put(u, compile((Stmt) u));
 		}
 	}
 
+	@Override
 	void run() {
-		doAnalysis();
+		long start = System.nanoTime();
+		deadline = budget.deadline();
+		try {
+			doAnalysis();
+			narrow();
+			fixpointNanos = System.nanoTime() - start;
+			if (measureLoopHeads) {
+				measureLoopHeads();
+			}
+			if (keep != null) {
+				retain(keep);
+			}
+		} catch (ApronException e) {
+			e.printStackTrace();
+		} catch (Budget.Exceeded e) {
+			fixpointNanos = System.nanoTime() - start;
+			exceeded = e.getMessage();
+			release();
+		}
+	}
+
+	/*
+	 * Drops every state except the ones before the given units, so the native
+	 * elements can be finalised while the checks run on the others.
+	 */
+	private void retain(Collection<? extends Unit> units) {
+		for (Unit u : g) {
+			if (!units.contains(u)) {
+				unitToBeforeFlow.get(u).set(null);
+			}
+			for (AWrapper w : unitToAfterFallFlow.get(u)) {
+				w.set(null);
+			}
+			for (AWrapper w : unitToAfterBranchFlow.get(u)) {
+				w.set(null);
+			}
+		}
+		entry = null;
+	}
+
+	/* Drops all states and compiled transfer functions, once the checks are done. */
+	@Override
+	void release() {
+		retain(Collections.<Unit> emptySet());
+		transfers.clear();
+		thresholds = null;
+	}
+
+	private void checkMemory(Abstract1[] state) throws ApronException {
+		if (budget.memory == 0) {
+			return;
+		}
+		long size = 0;
+		for (Abstract1 pack : state) {
+			size += pack.getSize(man);
+		}
+		if (size > budget.memory) {
+			throw new Budget.Exceeded("over memory budget");
+		}
+	}
+
+	private void measureLoopHeads() throws ApronException {
+		headConstraints = 0;
+		headGenerators = 0;
+		for (Unit head : loopHeads.keySet()) {
+			int constraints = 0;
+			int generators = 0;
+			for (Abstract1 pack : unitToBeforeFlow.get(head).get()) {
+				constraints += pack.toLincons(man).length;
+				generators += pack.toGenerator(man).length;
+			}
+			headConstraints = Math.max(headConstraints, constraints);
+			headGenerators = Math.max(headGenerators, generators);
+		}
+	}
+
+	/*
+	 * Widening thresholds per pack: v <= k and v >= k for every variable v of
+	 * the pack and every constant k the guards and PrinterArray sizes of the
+	 * method compare against.
+	 */
+	private Lincons1[][] buildThresholds() {
+		TreeSet<Integer> constants = new TreeSet<Integer>();
+		for (Unit u : g.getBody().getUnits()) {
+			if (u instanceof IfStmt && ((IfStmt) u).getCondition() instanceof AbstractBinopExpr) {
+				AbstractBinopExpr c = (AbstractBinopExpr) ((IfStmt) u).getCondition();
+				for (Value v : new Value[] { c.getOp1(), c.getOp2() }) {
+					if (v instanceof IntConstant) {
+						int k = ((IntConstant) v).value;
+						constants.add(k - 1);
+						constants.add(k);
+						constants.add(k + 1);
+					}
+				}
+			} else if (((Stmt) u).containsInvokeExpr()
+					&& ((Stmt) u).getInvokeExpr() instanceof JSpecialInvokeExpr) {
+				InvokeExpr e = ((Stmt) u).getInvokeExpr();
+				if (e.getMethod().getDeclaringClass().toString().equals(resourceArrayName)
+						&& e.getArgCount() > 0 && e.getArg(0) instanceof IntConstant) {
+					int size = ((IntConstant) e.getArg(0)).value;
+					constants.add(0);
+					constants.add(size - 1);
+					constants.add(size);
+				}
+			}
+		}
+
+		Lincons1[][] t = new Lincons1[envs.length][];
+		for (int i = 0; i < envs.length; i++) {
+			List<Lincons1> pack = new ArrayList<Lincons1>();
+			for (String var : packing.vars(i)) {
+				for (int k : constants) {
+					Linterm1[] upper = { new Linterm1(var, new MpqScalar(-1)) };
+					Linterm1[] lower = { new Linterm1(var, new MpqScalar(1)) };
+					pack.add(new Lincons1(Lincons1.SUPEQ, new Linexpr1(envs[i], upper, new MpqScalar(k))));
+					pack.add(new Lincons1(Lincons1.SUPEQ, new Linexpr1(envs[i], lower, new MpqScalar(-k))));
+				}
+			}
+			t[i] = pack.toArray(new Lincons1[0]);
+		}
+		return t;
+	}
+
+	/*
+	 * Bounded descending phase: re-applies the transfer functions to the
+	 * widened fixpoint, in unit order. Every step starts from a sound state,
+	 * so the states only get tighter. Only the states before the units are
+	 * updated, the checks do not look at the others.
+	 */
+	private void narrow() throws ApronException {
+		if (loopHeads.isEmpty()) {
+			// without loops there was no widening to recover from
+			return;
+		}
+		if (sparse) {
+			// the unit order needs the state before every unit of the previous step
+			for (int step = 0; step < NARROWING_STEPS; step++) {
+				descend(wto);
+			}
+			return;
+		}
+		Chain<Unit> units = g.getBody().getUnits();
+		for (int step = 0; step < NARROWING_STEPS; step++) {
+			HashMap<Unit, Abstract1[][]> outs = new HashMap<Unit, Abstract1[][]>();
+			for (Unit u : units) {
+				// the entry state is not the join of any predecessors
+				List<Unit> preds = g.getPredsOf(u);
+				if (preds.isEmpty() || g.getHeads().contains(u)) {
+					continue;
+				}
+				Abstract1[] in = bottom();
+				for (Unit p : preds) {
+					Abstract1[][] out = outs.get(p);
+					if (out == null) {
+						out = outOf(p, unitToBeforeFlow.get(p).get());
+						outs.put(p, out);
+					}
+					if (p.fallsThrough() && units.getSuccOf(p) == u) {
+						in = join(in, out[0], false);
+					}
+					for (UnitBox box : p.getUnitBoxes()) {
+						if (box.getUnit() == u) {
+							in = join(in, out[1], false);
+						}
+					}
+				}
+				unitToBeforeFlow.get(u).set(in);
+				outs.remove(u);
+			}
+		}
+	}
+
+	/* The compiled transfer function of a unit. */
+	Transfer transferOf(Unit u) {
+		return transfers.get(u);
+	}
+
+	/* Fall through and branch states after a unit, from the given state before it. */
+	private Abstract1[][] outOf(Unit u, Abstract1[] in) throws ApronException {
+		flowThroughCount++;
+		checkTime();
+		return transferOf(u).apply(this, in);
 	}
 
 	static void unhandled(String what) {
@@ -160,196 +477,253 @@ public class Analysis extends ForwardBranchedFlowAnalysis<AWrapper> {
 	}
 
 	
-	private void handleIf(AbstractBinopExpr eqExpr, Abstract1 in, AWrapper ow,
-			AWrapper ow_branchout) throws ApronException {
+	/* Compiles the transfer function of a statement, see Transfer. */
+	private Transfer compile(Stmt s) {
+		if (slice != null && !slice.contains(s)) {
+			// cannot affect any check, the state passes unchanged
+			return Transfer.IDENTITY;
+		} else if (s instanceof DefinitionStmt) {
+			DefinitionStmt sd = (DefinitionStmt) s;
+			Value left = sd.getLeftOp();
+			Value right = sd.getRightOp();
+			
+			// You do not need to handle these cases:
+			if (!(left instanceof JimpleLocal)) {
+				unhandled("1: Assignment to non-variables is not handled.");
+			} else if ((left instanceof JArrayRef) 
+					&& (!((((JArrayRef) left).getBase()) instanceof JimpleLocal))) {
+				unhandled("2: Assignment to a non-local array variable is not handled.");
+			}
+
+			if (left instanceof JArrayRef || left instanceof JInstanceFieldRef) {
+				// stores to the heap are not tracked
+				return Transfer.IDENTITY;
+			} else if (left.getType() instanceof DoubleType) {
+				// doubles are not tracked
+				return Transfer.IDENTITY;
+			} else if ((left.getType() instanceof RefType && !left.getType()
+					.toString().equals(resourceArrayName))
+					|| left.getType() instanceof ArrayType) {
+				// references are not tracked
+				return Transfer.IDENTITY;
+			}
+
+			// Make sure you support all definition statements
+			Lincons1[] summary = callSummaries.get(s);
+			if (summary != null) {
+				return new Transfer.Call(((JimpleLocal) left).getName(), s.getInvokeExpr(), summary);
+			}
+			return compileDef(left, right);
+			
+		} else if (s instanceof JIfStmt) {
+			IfStmt ifs = (JIfStmt) s;
+			Value condition = ifs.getCondition();
+			
+			if (condition instanceof JEqExpr
+					|| condition instanceof JNeExpr
+					|| condition instanceof JGeExpr
+					|| condition instanceof JLeExpr
+					|| condition instanceof JLtExpr
+					|| condition instanceof JGtExpr) {
+
+				AbstractBinopExpr eqExpr = (AbstractBinopExpr) condition;
+				
+				// Make sure compileIf supports the conditional expressions above
+				return compileIf(eqExpr);
+			}
+		} 
+		return Transfer.IDENTITY;
+	}
+
+	private Transfer compileIf(AbstractBinopExpr eqExpr) {
 		Value left = eqExpr.getOp1();
 		Value right = eqExpr.getOp2();
 
+		// Comparisons of references, longs or floats refine no tracked variable
+		if (!isIntOperand(left) || !isIntOperand(right)) {
+			return Transfer.IDENTITY;
+		}
+
+		// Both sides of a guard are in the same pack
+		int pack = 0;
+		if (left instanceof JimpleLocal) {
+			pack = packing.packOf(((JimpleLocal) left).getName());
+		} else if (right instanceof JimpleLocal) {
+			pack = packing.packOf(((JimpleLocal) right).getName());
+		}
+
 		// Concrete expression trees in APRON
 		Texpr1Node lAr = null;
 		Texpr1Node rAr = null;
 
-		// Check whether the comparison has a valid left side
 		if (left instanceof IntConstant) {
 			lAr = new Texpr1CstNode(new MpqScalar(((IntConstant) left).value));
-		} else if (left instanceof JimpleLocal) {
-			if (left.getType().toString().equals("PrinterArray")) {
-				ow.set(new Abstract1(man, in));
-				ow_branchout.set(new Abstract1(man, in));
-				return;
-			}
-			lAr = new Texpr1VarNode(((JimpleLocal) left).getName());
 		} else {
-			System.out.println("left: unexpected:" + left.getClass()
-					+ " name:" + ((JimpleLocal) left).getName());
+			lAr = new Texpr1VarNode(((JimpleLocal) left).getName());
 		}
-		// At this point, we have a valid left hand side expression tree stored in lAr
-		
-		// Now also check the right hand side
-		if ( right instanceof IntConstant) {
+		if (right instanceof IntConstant) {
 			rAr = new Texpr1CstNode(new MpqScalar(((IntConstant) right).value));
-		} else if (right instanceof JimpleLocal) {
-			if (right.getType().toString().equals("PrinterArray")) {
-				ow.set(new Abstract1(man, in));
-				ow_branchout.set(new Abstract1(man, in));
-				return;
-			}
-			rAr = new Texpr1VarNode(((JimpleLocal) right).getName());
 		} else {
-			System.out.println("right: unexpected:" + right.getClass()
-					+ " name:" + ((JimpleLocal) right).getName());
+			rAr = new Texpr1VarNode(((JimpleLocal) right).getName());
 		}
-		// Here we also have rAr containing the expression tree of rAr
-		
-		// TODO: Handle required conditional expressions
-		// Done
-		
+
+		if (pack < 0) {
+			// untracked variables, nothing to refine
+			return Transfer.IDENTITY;
+		}
+		Environment env = envs[pack];
+
+		// Affine conditions (all of them, unless an operand is untracked) skip the trees
+		Linexpr1 lr = linear(pack, left, 1, right, -1);
+		if (lr != null) {
+			Linexpr1 rl = linear(pack, left, -1, right, 1);
+			if (eqExpr instanceof JNeExpr) {
+				return new Transfer.LinearGuard(pack, new Lincons1(Lincons1.EQ, lr), new Lincons1(Lincons1.DISEQ, lr));
+			} else if (eqExpr instanceof JEqExpr) {
+				return new Transfer.LinearGuard(pack, new Lincons1(Lincons1.DISEQ, lr), new Lincons1(Lincons1.EQ, lr));
+			} else if (eqExpr instanceof JGeExpr) {
+				return new Transfer.LinearGuard(pack, new Lincons1(Lincons1.SUP, rl), new Lincons1(Lincons1.SUPEQ, lr));
+			} else if (eqExpr instanceof JLeExpr) {
+				return new Transfer.LinearGuard(pack, new Lincons1(Lincons1.SUP, lr), new Lincons1(Lincons1.SUPEQ, rl));
+			} else if (eqExpr instanceof JGtExpr) {
+				return new Transfer.LinearGuard(pack, new Lincons1(Lincons1.SUPEQ, rl), new Lincons1(Lincons1.SUP, lr));
+			} else if (eqExpr instanceof JLtExpr) {
+				return new Transfer.LinearGuard(pack, new Lincons1(Lincons1.SUPEQ, lr), new Lincons1(Lincons1.SUP, rl));
+			}
+		}
+
 		Texpr1BinNode differenceTreeLR = new Texpr1BinNode(Texpr1BinNode.OP_SUB, lAr, rAr);
 		Texpr1BinNode differenceTreeRL = new Texpr1BinNode(Texpr1BinNode.OP_SUB, rAr, lAr);
 		
-		Analysis.man.setAlgorithm(Manager.FUNID_MEET, Integer.MAX_VALUE);
-		Analysis.man.setAlgorithm(Manager.FUNID_MEET_TCONS_ARRAY, Integer.MAX_VALUE);
-		
 		if (eqExpr instanceof JNeExpr) {
 			// !=			
 			Tcons1 disequalityConstraint = new Tcons1 (env, Tcons1.DISEQ, (Texpr1Node) differenceTreeLR);
-			ow_branchout.set(in.meetCopy(man, disequalityConstraint));
-			
 			Tcons1 equalityConstraint = new Tcons1 (env, Tcons1.EQ, (Texpr1Node) differenceTreeLR);
-			ow.set(in.meetCopy(man, equalityConstraint));
-			
+			return new Transfer.Guard(pack, equalityConstraint, disequalityConstraint);
 		} 
 		else if (eqExpr instanceof JEqExpr) {
 			// ==
 			Tcons1 equalityConstraint = new Tcons1 (env, Tcons1.EQ, (Texpr1Node) differenceTreeLR);
-			ow_branchout.set(in.meetCopy(man, equalityConstraint));
-			
 			Tcons1 disequalityConstraint = new Tcons1 (env, Tcons1.DISEQ, (Texpr1Node) differenceTreeLR);
-			ow.set(in.meetCopy(man, disequalityConstraint));
+			return new Transfer.Guard(pack, disequalityConstraint, equalityConstraint);
 		}
 		else if (eqExpr instanceof JGeExpr) {
 			// >=
 			Tcons1 geConstraint = new Tcons1 (env, Tcons1.SUPEQ, (Texpr1Node) differenceTreeLR );
-			ow_branchout.set(in.meetCopy(man, geConstraint));
-			
 			Tcons1 ltConstraint = new Tcons1 (env, Tcons1.SUP, (Texpr1Node) differenceTreeRL );
-			ow.set(in.meetCopy(man, ltConstraint));
+			return new Transfer.Guard(pack, ltConstraint, geConstraint);
 		}
 		else if (eqExpr instanceof JLeExpr) {
 			// <=
 			Tcons1 leConstraint = new Tcons1 (env, Tcons1.SUPEQ, (Texpr1Node) differenceTreeRL );
-			ow_branchout.set(in.meetCopy(man, leConstraint));
-			
 			Tcons1 gtConstraint = new Tcons1 (env, Tcons1.SUP, (Texpr1Node) differenceTreeLR );
-			ow.set(in.meetCopy(man, gtConstraint));
+			return new Transfer.Guard(pack, gtConstraint, leConstraint);
 		}
 		else if (eqExpr instanceof JGtExpr) {
 			// >
 			Tcons1 gtConstraint = new Tcons1 (env, Tcons1.SUP, (Texpr1Node) differenceTreeLR );
-			ow_branchout.set(in.meetCopy(man, gtConstraint));
-			
 			Tcons1 leConstraint = new Tcons1 (env, Tcons1.SUPEQ, (Texpr1Node) differenceTreeRL );
-			ow.set(in.meetCopy(man, leConstraint));
+			return new Transfer.Guard(pack, leConstraint, gtConstraint);
 		}
 		else if (eqExpr instanceof JLtExpr) {
 			// <
 			Tcons1 ltConstraint = new Tcons1 (env, Tcons1.SUP, (Texpr1Node) differenceTreeRL );
-			ow_branchout.set(in.meetCopy(man, ltConstraint));
-			
 			Tcons1 geConstraint = new Tcons1 (env, Tcons1.SUPEQ, (Texpr1Node) differenceTreeLR );
-			ow.set(in.meetCopy(man, geConstraint));
+			return new Transfer.Guard(pack, geConstraint, ltConstraint);
 		}
 		else {
-			System.out.println("Unexpexted condition: " + eqExpr.toString() + " class:" + eqExpr.getClass().toString() );
+			unhandled("condition " + eqExpr);
+			return Transfer.IDENTITY;
 		}
 	}
+
+	/* True for the values the domains track: int constants and int locals. */
+	private static boolean isIntOperand(Value v) {
+		return v instanceof IntConstant || (v instanceof JimpleLocal && v.getType() instanceof IntegerType);
+	}
 	
 	
 	
+	/*
+	 * Linear form of an assigned expression, or null if it is not affine (a
+	 * division or a product of two variables) or uses variables outside the
+	 * pack. Those keep going through tree expressions.
+	 */
+	private Linexpr1 affine(int pack, Value right) {
+		if (right instanceof IntConstant || right instanceof JimpleLocal) {
+			return linear(pack, right, 1, null, 0);
+		}
+		if (right instanceof JAddExpr) {
+			return linear(pack, ((JAddExpr) right).getOp1(), 1, ((JAddExpr) right).getOp2(), 1);
+		}
+		if (right instanceof JSubExpr) {
+			return linear(pack, ((JSubExpr) right).getOp1(), 1, ((JSubExpr) right).getOp2(), -1);
+		}
+		if (right instanceof JMulExpr) {
+			Value op1 = ((JMulExpr) right).getOp1();
+			Value op2 = ((JMulExpr) right).getOp2();
+			if (op1 instanceof IntConstant) {
+				return linear(pack, op2, ((IntConstant) op1).value, null, 0);
+			}
+			if (op2 instanceof IntConstant) {
+				return linear(pack, op1, ((IntConstant) op2).value, null, 0);
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * The linear form ca * a + cb * b over the variables of the pack (b may be
+	 * null), or null if an operand is neither a constant nor such a variable.
+	 */
+	private Linexpr1 linear(int pack, Value a, long ca, Value b, long cb) {
+		LinkedHashMap<String, Long> coeffs = new LinkedHashMap<String, Long>();
+		long cst = 0;
+		Value[] ops = { a, b };
+		long[] cs = { ca, cb };
+		for (int i = 0; i < ops.length; i++) {
+			if (ops[i] == null) {
+				continue;
+			}
+			if (ops[i] instanceof IntConstant) {
+				cst += cs[i] * ((IntConstant) ops[i]).value;
+			} else if (ops[i] instanceof JimpleLocal && ops[i].getType() instanceof IntegerType
+					&& packing.packOf(((JimpleLocal) ops[i]).getName()) == pack) {
+				String var = ((JimpleLocal) ops[i]).getName();
+				Long c = coeffs.get(var);
+				coeffs.put(var, (c == null ? 0 : c) + cs[i]);
+			} else {
+				return null;
+			}
+		}
+		Linterm1[] terms = new Linterm1[coeffs.size()];
+		int i = 0;
+		for (String var : coeffs.keySet()) {
+			terms[i++] = new Linterm1(var, new MpqScalar(coeffs.get(var)));
+		}
+		return new Linexpr1(envs[pack], terms, new MpqScalar(cst));
+	}
+
 	@Override
 	protected void flowThrough(AWrapper current, Unit op,
 			List<AWrapper> fallOut, List<AWrapper> branchOuts) {
-		
-		Stmt s = (Stmt) op;
-
-		Abstract1 in = ((AWrapper) current).get();
+		flowThroughCount++;
+		checkTime();
 
-		Abstract1 o;
 		try {
-			o = new Abstract1(man, in);
-			Abstract1 o_branchout = new Abstract1(man, in);
-
-						
-			if (s instanceof DefinitionStmt) {
-				DefinitionStmt sd = (DefinitionStmt) s;
-				Value left = sd.getLeftOp();
-				Value right = sd.getRightOp();
-				
-				// You do not need to handle these cases:
-				if (!(left instanceof JimpleLocal)) {
-					unhandled("1: Assignment to non-variables is not handled.");
-				} else if ((left instanceof JArrayRef) 
-						&& (!((((JArrayRef) left).getBase()) instanceof JimpleLocal))) {
-					unhandled("2: Assignment to a non-local array variable is not handled.");
-				}
-
-				if (left instanceof JArrayRef || left instanceof JInstanceFieldRef) {
-					return;
-				}
-
-				if (left.getType() instanceof DoubleType) {
-					return;
-				}
-				
-				if ((left.getType() instanceof RefType && !left.getType()
-						.toString().equals(resourceArrayName))
-						|| left.getType() instanceof ArrayType) {
-					return;
-				}
-				
-				// Make sure you support all definition statements
-				handleDef(o, left, right);
-				
-			} else if (s instanceof JIfStmt) {
-				IfStmt ifs = (JIfStmt) s;
-				Value condition = ifs.getCondition();
-				
-				if (condition instanceof JEqExpr
-						|| condition instanceof JNeExpr
-						|| condition instanceof JGeExpr
-						|| condition instanceof JLeExpr
-						|| condition instanceof JLtExpr
-						|| condition instanceof JGtExpr) {
-								
-					AWrapper ow = new AWrapper(null);
-					AWrapper ow_branchout = new AWrapper(null);
-
-					AbstractBinopExpr eqExpr = (AbstractBinopExpr) condition;
-					
-					// Make sure handleIf supports the conditional expressions above
-					handleIf(eqExpr, in, ow, ow_branchout);
-					
-					o = ow.get();
-					o_branchout = ow_branchout.get();			
-				}
-			} 
+			// Unchanged states pass through as the same objects, only changed packs are copied
+			Abstract1[][] out = transfers.get(op).apply(this, current.get());
 
 			for (Iterator<AWrapper> it = fallOut.iterator(); it.hasNext();) {
 				AWrapper op1 = it.next();
-
-				if (o != null) {
-					op1.set(o);
-					op1.setStatement(s);
-				}
+				op1.set(out[0]);
+				op1.setStatement(op);
 			}
 
 			for (Iterator<AWrapper> it = branchOuts.iterator(); it.hasNext();) {
 				AWrapper op1 = it.next();
-
-				if (o_branchout != null) {
-					op1.set(o_branchout);
-					op1.setStatement(s);
-				}
+				op1.set(out[1]);
+				op1.setStatement(op);
 			}
 
 		} catch (ApronException e) {
@@ -357,8 +731,7 @@ public class Analysis extends ForwardBranchedFlowAnalysis<AWrapper> {
 		}
 	}
 
-	private void handleDef(Abstract1 o, Value left, Value right)
-			throws ApronException {
+	private Transfer compileDef(Value left, Value right) {
 		
 		
 		//Texpr1Node lAr = null;
@@ -368,38 +741,41 @@ public class Analysis extends ForwardBranchedFlowAnalysis<AWrapper> {
 		if (left instanceof JimpleLocal) {
 			String varName = ((JimpleLocal) left).getName();
 
+			// Only the pack of the assigned variable changes
+			int pack = packing.packOf(varName);
+			if (pack < 0) {
+				return Transfer.IDENTITY;
+			}
+			Environment env = envs[pack];
+
+			Linexpr1 affine = affine(pack, right);
+			if (affine != null) {
+				return new Transfer.LinearAssign(pack, varName, affine);
+			}
+
 			if (right instanceof IntConstant) {
 				IntConstant c = ((IntConstant) right);
 				rAr = new Texpr1CstNode(new MpqScalar(c.value));
 				xp = new Texpr1Intern(env, rAr);
-				Analysis.man.setAlgorithm(Manager.FUNID_ASSIGN_TEXPR_ARRAY, Integer.MAX_VALUE);
-				o.assign(man, varName, xp, null);
+				return new Transfer.Assign(pack, varName, xp);
 			}
-			else if (right instanceof JimpleLocal ){
-				if (right.getType().toString().equals("PrinterArray")) {
-					// Nothing to do in APRON for the PinterArray
-					return;
-				}
-				else {
-					String otherVarName = ((JimpleLocal) right).getName();
-					if (env.hasVar(otherVarName)) {
-						rAr = new Texpr1VarNode(otherVarName);
-						xp = new Texpr1Intern(env, rAr);
-						Analysis.man.setAlgorithm(Manager.FUNID_ASSIGN_TEXPR_ARRAY, Integer.MAX_VALUE);
-						o.assign(man, varName, xp, null);
-					}
-					else {
-						System.out.println("variable on the right hand with name <" + otherVarName + 
-								">  and type <" + right.getType().toString() + "> unknown to current enviroment. Analysis.env: \nInts:" + Arrays.toString(env.getIntVars())
-								+ "\nReals:" + Arrays.toString(env.getRealVars()));
-					}
+			else if (right instanceof JimpleLocal) {
+				String otherVarName = ((JimpleLocal) right).getName();
+				if (isIntOperand(right) && packing.packOf(otherVarName) == pack) {
+					rAr = new Texpr1VarNode(otherVarName);
+					xp = new Texpr1Intern(env, rAr);
+					return new Transfer.Assign(pack, varName, xp);
 				}
+				unhandled("copy of " + otherVarName + " outside the pack of " + varName);
 			}
 			else if (right instanceof AbstractBinopExpr) {
 				AbstractBinopExpr binExpr = ((AbstractBinopExpr) right);
 				Value kwesokunxele = binExpr.getOp1();
 				Value kwesokudla = binExpr.getOp2();
-				// protected: String symbol = binExpr.getSymbol();
+				// comparisons of longs and floats give any value
+				if (!isIntOperand(kwesokunxele) || !isIntOperand(kwesokudla)) {
+					return forget(pack, varName);
+				}
 				int operator;
 				if (right instanceof JAddExpr) {
 					operator = Texpr1BinNode.OP_ADD;
@@ -410,8 +786,9 @@ public class Analysis extends ForwardBranchedFlowAnalysis<AWrapper> {
 				} else if(right instanceof JDivExpr) {
 					operator = Texpr1BinNode.OP_DIV;
 				} else {
-					System.out.println("operator: unexpected:" + Texpr1BinNode.class);
-					return;
+					// remainders, shifts and bit operations give any value
+					unhandled("operator of " + right);
+					return forget(pack, varName);
 				}
 				// What Subexpressions do we have to handle here?
 				    // Only constant nodes and var nodes,
@@ -420,13 +797,9 @@ public class Analysis extends ForwardBranchedFlowAnalysis<AWrapper> {
 				if (kwesokunxele instanceof IntConstant) {
 					IntConstant c = ((IntConstant) kwesokunxele);
 					kwesokunxeleAr = new Texpr1CstNode(new MpqScalar(c.value));
-				} else if (kwesokunxele instanceof JimpleLocal) {
+				} else {
 					JimpleLocal x = ((JimpleLocal) kwesokunxele);
 					kwesokunxeleAr = new Texpr1VarNode(x.getName());
-				} else {
-					System.out.println("kwesokunxele: unexpected:" + kwesokunxele.getClass()
-							+ " name:" + ((JimpleLocal) kwesokunxele).getName());
-					return;
 				}
 				
 				Texpr1Node kwesokudlaAr;
@@ -437,31 +810,122 @@ public class Analysis extends ForwardBranchedFlowAnalysis<AWrapper> {
 					}
 					else {
 						// Exception
-						o = new Abstract1(man, env, true);
-						return;
+						return Transfer.IDENTITY;
 					}
-				} else if (kwesokudla instanceof JimpleLocal) {
+				} else {
 					JimpleLocal x = ((JimpleLocal) kwesokudla);
 					kwesokudlaAr = new Texpr1VarNode(x.getName());
-				} else {
-					System.out.println("kwesokudla: unexpected:" + kwesokudla.getClass()
-							+ " name:" + ((JimpleLocal) kwesokudla).getName());
-					return;
 				}
 				
 				rAr = new Texpr1BinNode(operator, kwesokunxeleAr, kwesokudlaAr);
 				xp = new Texpr1Intern(env, rAr);
-				Analysis.man.setAlgorithm(Manager.FUNID_ASSIGN_TEXPR_ARRAY, Integer.MAX_VALUE);
-				o.assign(man, varName, xp, null);
-			}
-			// TODO: Handle other kinds of assignments (e.g. x = y * z)
-			// done
-			else {
-				if (o.getEnvironment().hasVar(varName)) {
-					o.forget(man, varName, false);
-				}
+				return new Transfer.Assign(pack, varName, xp);
+			}
+			else if (summarize && right instanceof ParameterRef
+					&& env.hasVar(Summaries.param(((ParameterRef) right).getIndex()))) {
+				rAr = new Texpr1VarNode(Summaries.param(((ParameterRef) right).getIndex()));
+				xp = new Texpr1Intern(env, rAr);
+				return new Transfer.Assign(pack, varName, xp);
 			}
+			return forget(pack, varName);
+		}
+		return Transfer.IDENTITY;
+	}
+
+	/* Assigns any value to the variable, for the right hand sides not modelled. */
+	private Transfer forget(int pack, String varName) {
+		if (envs[pack].hasVar(varName)) {
+			return new Transfer.Forget(pack, varName);
 		}
+		return Transfer.IDENTITY;
+	}
+
+	/*
+	 * Binds the arguments of the call, meets with the summary of the callee and
+	 * assigns its result to the variable.
+	 */
+	void applySummary(Abstract1[] os, String varName, InvokeExpr call, Lincons1[] summary)
+			throws ApronException {
+		int pack = packing.packOf(varName);
+		if (pack < 0) {
+			return;
+		}
+		Environment env = envs[pack];
+		if (summary.length == 0) {
+			os[pack] = os[pack].forgetCopy(man, varName, false);
+			return;
+		}
+
+		String[] callVars = summary[0].getEnvironment().getIntVars();
+		Environment ext = env.add(callVars, new String[0]);
+		Abstract1 a = os[pack].changeEnvironmentCopy(man, ext, false);
+		for (String var : callVars) {
+			int i = Summaries.argIndex(var);
+			if (i < 0) {
+				continue;
+			}
+			// arguments outside of the pack stay unconstrained
+			Value arg = call.getArg(i);
+			Texpr1Node argAr = null;
+			if (arg instanceof IntConstant) {
+				argAr = new Texpr1CstNode(new MpqScalar(((IntConstant) arg).value));
+			} else if (arg instanceof Local && packing.packOf(((Local) arg).getName()) == pack) {
+				argAr = new Texpr1VarNode(((Local) arg).getName());
+			}
+			if (argAr != null) {
+				a.assign(man, var, new Texpr1Intern(ext, argAr), null);
+			}
+		}
+
+		Lincons1[] constraints = new Lincons1[summary.length];
+		for (int i = 0; i < summary.length; i++) {
+			constraints[i] = summary[i].extendEnvironmentCopy(ext);
+		}
+		a.meet(man, constraints);
+		a.assign(man, varName, new Texpr1Intern(ext, new Texpr1VarNode(Summaries.RESULT)), null);
+		a = a.changeEnvironmentCopy(man, env, false);
+
+		if (a.isBottom(man)) {
+			System.arraycopy(bottom(), 0, os, 0, os.length);
+		} else {
+			os[pack] = a;
+		}
+	}
+
+	/*
+	 * Relation between the parameters and the return value of a method analysed
+	 * with forSummary, joined over its return statements. Returns null if the
+	 * method never returns or the fixpoint went over its budget.
+	 */
+	Lincons1[] summary() throws ApronException {
+		if (exceeded != null) {
+			return null;
+		}
+		Environment summaryEnv = new Environment(summaryVars, new String[0]);
+		Abstract1 result = null;
+		for (Unit u : g.getBody().getUnits()) {
+			if (!(u instanceof ReturnStmt)) {
+				continue;
+			}
+			AWrapper state = getFlowBefore(u);
+			if (state.isBottom()) {
+				continue;
+			}
+			Value op = ((ReturnStmt) u).getOp();
+			Texpr1Node opAr = null;
+			if (op instanceof IntConstant) {
+				opAr = new Texpr1CstNode(new MpqScalar(((IntConstant) op).value));
+			} else if (op instanceof Local && envs[0].hasVar(((Local) op).getName())) {
+				opAr = new Texpr1VarNode(((Local) op).getName());
+			}
+			Abstract1 r = new Abstract1(man, state.get(0));
+			if (opAr != null) {
+				r.assign(man, Summaries.RET, new Texpr1Intern(envs[0], opAr), null);
+			}
+			r = r.changeEnvironmentCopy(man, summaryEnv, false);
+			result = result == null ? r : result.joinCopy(man, r);
+		}
+		return result == null ? null : result.toLincons(man);
 	}
 
 	@Override
@@ -472,61 +936,379 @@ public class Analysis extends ForwardBranchedFlowAnalysis<AWrapper> {
 	@Override
 	protected AWrapper entryInitialFlow() {
 		
-		Abstract1 top = null;
+		Abstract1[] top = new Abstract1[envs.length];
 
 		try {
-			top = new Abstract1(man, env);
+			for (int i = 0; i < envs.length; i++) {
+				top[i] = new Abstract1(man, envs[i]);
+			}
 		} catch (ApronException e) {
 		}
 
 		AWrapper a = new AWrapper(top);
 		a.man = man;
+		a.packing = packing;
 		return a;
 	}
 	
 	private static class Counter {
 		int value;
+		int delay; // joins in a row moving a bound before widening, for loop heads
+		int[][] streaks; // joins in a row that moved each variable, by pack
 
 		Counter(int v) {
 			value = v;
 		}
 	}
 	
+	/*
+	 * Fixpoint engine over the weak topological ordering of the method instead
+	 * of Soot's worklist: every component is stabilised before the units after
+	 * it, inner components within every iteration of the outer one, and only
+	 * component heads join repeatedly and widen. Fills the same flow maps as
+	 * the worklist, so getFlowBefore and friends work as before.
+	 *
+	 * If sparse is set, the state before a unit is only stored at loop heads
+	 * and kept units, and the states after a unit only until its last reader
+	 * used them; a loop head reads its predecessors again, so theirs stay.
+	 * Everything else is recomputed from the nearest stored states when it is
+	 * asked for, so memory grows with the loops and check sites rather than
+	 * the statements, at the price of running the transfer function of a unit
+	 * again even when its input did not change.
+	 */
 	@Override
-	protected void merge(Unit succNode, AWrapper x, AWrapper y, AWrapper u) {
-		Counter count = loopHeads.get(succNode);
-		
-		Abstract1 a1 = x.get();
-		Abstract1 a2 = y.get();
-		Abstract1 a3 = null;
-		
-		try{ 
-			if (count != null) {
-				++count.value;
-				if (count.value < WIDENING_THRESHOLD) {
-					a3 = a1.joinCopy(man, a2);
-				} else {
-					a3 = a1.widening(man, a2);
+	protected void doAnalysis() {
+		Abstract1[] bot = null; // shared by all initial states if sparse
+		if (sparse) {
+			try {
+				bot = bottom();
+			} catch (ApronException e) {
+			}
+		}
+		for (Unit u : g) {
+			unitToBeforeFlow.put(u, initialFlow(bot));
+			ArrayList<AWrapper> fall = new ArrayList<AWrapper>();
+			if (u.fallsThrough()) {
+				fall.add(initialFlow(bot));
+			}
+			unitToAfterFallFlow.put(u, fall);
+			ArrayList<AWrapper> branch = new ArrayList<AWrapper>();
+			for (int i = 0; i < u.getUnitBoxes().size(); i++) {
+				branch.add(initialFlow(bot));
+			}
+			unitToAfterBranchFlow.put(u, branch);
+		}
+		entry = entryInitialFlow().get();
+
+		wto = Wto.compute(g);
+		if (sparse) {
+			findLastReaders();
+		}
+		try {
+			iterate(wto);
+		} catch (ApronException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private AWrapper initialFlow(Abstract1[] shared) {
+		if (shared == null) {
+			return newInitialFlow();
+		}
+		AWrapper a = new AWrapper(shared);
+		a.man = man;
+		a.packing = packing;
+		return a;
+	}
+
+	/*
+	 * Numbers the units in the ordering and finds the last successor of every
+	 * unit in it. Edges into units other than component heads go forward in
+	 * the ordering, so no unit reads the states after a unit once the last
+	 * successor did, until that unit is run again.
+	 */
+	private void findLastReaders() {
+		order = new HashMap<Unit, Integer>();
+		HashSet<Unit> heads = new HashSet<Unit>();
+		number(wto, heads);
+		lastReader = new HashMap<Unit, Unit>();
+		for (Unit p : order.keySet()) {
+			Unit last = null;
+			for (Unit s : g.getSuccsOf(p)) {
+				if (heads.contains(s)) {
+					// read again in every iteration of the component
+					last = null;
+					break;
 				}
+				if (last == null || order.get(s) > order.get(last)) {
+					last = s;
+				}
+			}
+			if (last != null) {
+				lastReader.put(p, last);
+			}
+		}
+	}
+
+	private void number(List<Wto.Element> elements, HashSet<Unit> heads) {
+		for (Wto.Element e : elements) {
+			order.put(e.head, order.size());
+			if (e.isComponent()) {
+				heads.add(e.head);
+				number(e.body, heads);
+			}
+		}
+	}
+
+	private void iterate(List<Wto.Element> elements) throws ApronException {
+		for (Wto.Element e : elements) {
+			if (e.isComponent()) {
+				stabilize(e);
 			} else {
-				a3 = a1.joinCopy(man, a2);
+				update(e.head, inflow(e.head));
+			}
+		}
+	}
+
+	/*
+	 * Iterates a component until the state at its head no longer grows. The
+	 * head widens once the bounds of a variable kept moving for its delay;
+	 * heads whose bounds settle by themselves are joined up to
+	 * WIDENING_THRESHOLD times.
+	 */
+	private void stabilize(Wto.Element c) throws ApronException {
+		Counter count = loopHeads.get(c.head);
+		if (count == null) {
+			count = new Counter(0);
+			count.delay = WIDENING_DELAY;
+			loopHeads.put(c.head, count);
+		}
+		count.value = 0;
+		count.streaks = null;
+
+		update(c.head, inflow(c.head));
+		while (true) {
+			iterationCount++;
+			iterate(c.body);
+			Abstract1[] old = unitToBeforeFlow.get(c.head).get();
+			Abstract1[] next = inflow(c.head);
+			if (isIncluded(next, old)) {
+				return;
+			}
+			next = join(old, next, false);
+			boolean steady = moved(old, next, count) >= count.delay;
+			if (++count.value >= WIDENING_THRESHOLD || steady) {
+				next = join(old, next, true);
+			}
+			checkMemory(next);
+			update(c.head, next);
+		}
+	}
+
+	/*
+	 * One descending step in the ordering, for sparse storage: every head
+	 * takes its inflow instead of the join with its old state, and its body
+	 * follows once. Starting from the widened fixpoint, every state stays sound.
+	 */
+	private void descend(List<Wto.Element> elements) throws ApronException {
+		for (Wto.Element e : elements) {
+			update(e.head, inflow(e.head));
+			if (e.isComponent()) {
+				descend(e.body);
+			}
+		}
+	}
+
+	private void update(Unit u, Abstract1[] in) {
+		AWrapper before = unitToBeforeFlow.get(u);
+		if (before.get() == in && hasOutputs(u)) {
+			// same input as last time, so the same output
+			return;
+		}
+		before.set(in);
+		flowThrough(before, u, unitToAfterFallFlow.get(u), unitToAfterBranchFlow.get(u));
+		if (sparse && !isStored(u)) {
+			before.set(null);
+		}
+	}
+
+	/* Whether sparse storage keeps the state before the unit. */
+	private boolean isStored(Unit u) {
+		return loopHeads.containsKey(u) || (keep != null && keep.contains(u));
+	}
+
+	private boolean hasOutputs(Unit u) {
+		for (AWrapper w : unitToAfterFallFlow.get(u)) {
+			if (w.get() == null) {
+				return false;
+			}
+		}
+		for (AWrapper w : unitToAfterBranchFlow.get(u)) {
+			if (w.get() == null) {
+				return false;
 			}
-		} catch (Exception e) {
-			System.out.println(e);
 		}
-		u.set(a3);
+		return true;
+	}
 
+	/* Join of the states on the edges into the unit. */
+	private Abstract1[] inflow(Unit u) throws ApronException {
+		Abstract1[] in = joinPreds(u, Collections.<Unit, Abstract1[]> emptyMap());
+		if (sparse) {
+			for (Unit p : g.getPredsOf(u)) {
+				if (lastReader.get(p) == u) {
+					for (AWrapper w : unitToAfterFallFlow.get(p)) {
+						w.set(null);
+					}
+					for (AWrapper w : unitToAfterBranchFlow.get(p)) {
+						w.set(null);
+					}
+				}
+			}
+		}
+		return in;
+	}
+
+	/* Join of the states on the edges into the unit, the dropped states before its predecessors from the map. */
+	private Abstract1[] joinPreds(Unit u, Map<Unit, Abstract1[]> recomputed) throws ApronException {
+		Abstract1[] in = g.getHeads().contains(u) ? entry : bottom();
+		Chain<Unit> units = g.getBody().getUnits();
+		for (Unit p : g.getPredsOf(u)) {
+			if (p.fallsThrough() && units.getSuccOf(p) == u) {
+				in = join(in, after(p, unitToAfterFallFlow.get(p).get(0), 0, recomputed), false);
+			}
+			List<UnitBox> boxes = p.getUnitBoxes();
+			for (int i = 0; i < boxes.size(); i++) {
+				if (boxes.get(i).getUnit() == u) {
+					in = join(in, after(p, unitToAfterBranchFlow.get(p).get(i), 1, recomputed), false);
+				}
+			}
+		}
+		return in;
+	}
+
+	/* A state after p, recomputed if sparse storage dropped it. */
+	private Abstract1[] after(Unit p, AWrapper stored, int edge, Map<Unit, Abstract1[]> recomputed)
+			throws ApronException {
+		if (stored.get() != null) {
+			return stored.get();
+		}
+		Abstract1[] in = unitToBeforeFlow.get(p).get();
+		if (in == null) {
+			in = recomputed.get(p);
+		}
+		if (in == null) {
+			in = beforeOf(p);
+		}
+		return outOf(p, in)[edge];
+	}
+
+	/*
+	 * The state before a unit that sparse storage dropped, from the stored
+	 * states before it. Every cycle passes a loop head, whose state is stored,
+	 * so the units in between are acyclic and are run in the ordering.
+	 */
+	private Abstract1[] beforeOf(Unit u) throws ApronException {
+		List<Unit> between = new ArrayList<Unit>();
+		HashSet<Unit> seen = new HashSet<Unit>();
+		LinkedList<Unit> todo = new LinkedList<Unit>();
+		todo.add(u);
+		seen.add(u);
+		while (!todo.isEmpty()) {
+			Unit n = todo.removeFirst();
+			between.add(n);
+			for (Unit p : g.getPredsOf(n)) {
+				if (unitToBeforeFlow.get(p).get() == null && seen.add(p)) {
+					todo.add(p);
+				}
+			}
+		}
+		Collections.sort(between, new Comparator<Unit>() {
+			@Override
+			public int compare(Unit a, Unit b) {
+				return order.get(a) - order.get(b);
+			}
+		});
+		HashMap<Unit, Abstract1[]> recomputed = new HashMap<Unit, Abstract1[]>();
+		for (Unit n : between) {
+			recomputed.put(n, joinPreds(n, recomputed));
+		}
+		return recomputed.get(u);
+	}
+
+	/* The state before a unit, recomputed if sparse storage did not keep it. */
+	@Override
+	public AWrapper getFlowBefore(Unit u) {
+		AWrapper before = super.getFlowBefore(u);
+		if (!sparse || before.get() != null || entry == null) {
+			return before;
+		}
+		AWrapper a = new AWrapper(null);
+		a.man = man;
+		a.packing = packing;
+		try {
+			a.set(beforeOf(u));
+		} catch (ApronException e) {
+			e.printStackTrace();
+		}
+		return a;
+	}
+
+	/*
+	 * Counts the joins in a row the bounds of each variable of a loop head
+	 * moved in, from its old state to the joined one. Returns the longest run.
+	 */
+	private int moved(Abstract1[] old, Abstract1[] joined, Counter count) throws ApronException {
+		if (old[0].isBottom(man)) {
+			return 0;
+		}
+		if (count.streaks == null) {
+			count.streaks = new int[joined.length][];
+		}
+		int longest = 0;
+		for (int i = 0; i < joined.length; i++) {
+			String[] vars = joined[i].getEnvironment().getIntVars();
+			if (count.streaks[i] == null || count.streaks[i].length != vars.length) {
+				count.streaks[i] = new int[vars.length];
+			}
+			for (int j = 0; j < vars.length; j++) {
+				boolean moves = false;
+				if (old[i] != joined[i]) {
+					boundCount += 2;
+					moves = old[i].getBound(man, vars[j]).cmp(joined[i].getBound(man, vars[j])) != 0;
+				}
+				count.streaks[i][j] = moves ? count.streaks[i][j] + 1 : 0;
+				longest = Math.max(longest, count.streaks[i][j]);
+			}
+		}
+		return longest;
+	}
+
+	private boolean isIncluded(Abstract1[] a1, Abstract1[] a2) throws ApronException {
+		// Identical objects need no native call
+		if (a1 == a2) {
+			return true;
+		}
+		if (a1[0].isBottom(man)) {
+			return true;
+		}
+		for (int i = 0; i < a1.length; i++) {
+			if (a1[i] != a2[i] && !a1[i].isIncluded(man, a2[i])) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	@Override
 	protected void merge(AWrapper src1, AWrapper src2, AWrapper trg) {
 
-		Abstract1 a1 = src1.get();
-		Abstract1 a2 = src2.get();
-		Abstract1 a3 = null;
+		Abstract1[] a1 = src1.get();
+		Abstract1[] a2 = src2.get();
+		Abstract1[] a3 = null;
 
 		try {
-			a3 = a1.joinCopy(man, a2);
+			a3 = join(a1, a2, false);
 		} catch (ApronException e) {
 			e.printStackTrace();
 		}
@@ -534,16 +1316,81 @@ public class Analysis extends ForwardBranchedFlowAnalysis<AWrapper> {
 		trg.set(a3);
 	}
 
+	/* Joins (or widens) two states pack by pack. */
+	private Abstract1[] join(Abstract1[] a1, Abstract1[] a2, boolean widen)
+			throws ApronException {
+		mergeCount++;
+		if (a1 == a2) {
+			return a1;
+		}
+		// Unreachable states have all their packs at bottom
+		if (a1[0].isBottom(man)) {
+			return a2;
+		}
+		if (a2[0].isBottom(man)) {
+			return a1;
+		}
+		Abstract1[] a3 = new Abstract1[a1.length];
+		for (int i = 0; i < a1.length; i++) {
+			if (a1[i] == a2[i]) {
+				// packs a statement passed through unchanged
+				a3[i] = a1[i];
+			} else if (widen && thresholds[i].length > 0) {
+				wideningCount++;
+				a3[i] = a1[i].wideningThreshold(man, a2[i], thresholds[i]);
+			} else if (widen) {
+				wideningCount++;
+				a3[i] = a1[i].widening(man, a2[i]);
+			} else {
+				joinCount++;
+				a3[i] = a1[i].joinCopy(man, a2[i]);
+			}
+		}
+		return a3;
+	}
+
+	/* Meets one pack with a constraint, an empty pack makes the whole state unreachable. */
+	Abstract1[] meet(Abstract1[] in, int pack, Tcons1 constraint)
+			throws ApronException {
+		meetCount++;
+		return meet(in, pack, in[pack].meetCopy(man, constraint));
+	}
+
+	Abstract1[] meet(Abstract1[] in, int pack, Lincons1 constraint)
+			throws ApronException {
+		meetCount++;
+		return meet(in, pack, in[pack].meetCopy(man, constraint));
+	}
+
+	private Abstract1[] meet(Abstract1[] in, int pack, Abstract1 m)
+			throws ApronException {
+		if (m.isBottom(man)) {
+			return bottom();
+		}
+		Abstract1[] out = in.clone();
+		out[pack] = m;
+		return out;
+	}
+
+	private Abstract1[] bottom() throws ApronException {
+		Abstract1[] bot = new Abstract1[envs.length];
+		for (int i = 0; i < envs.length; i++) {
+			bot[i] = new Abstract1(man, envs[i], true);
+		}
+		return bot;
+	}
+
 	@Override
 	protected AWrapper newInitialFlow() {
-		Abstract1 bot = null;
+		Abstract1[] bot = null;
 
 		try {
-			bot = new Abstract1(man, env, true);
+			bot = bottom();
 		} catch (ApronException e) {
 		}
 		AWrapper a = new AWrapper(bot);
 		a.man = man;
+		a.packing = packing;
 		return a;
 
 	}
@@ -552,7 +1399,7 @@ public class Analysis extends ForwardBranchedFlowAnalysis<AWrapper> {
 		return val.getType().toString().equals("int") || val.getType().toString().equals("short") || val.getType().toString().equals("byte");
 	}
 	
-	public static final Interval getInterval(AWrapper state, Value val) {
+	public final Interval getInterval(AWrapper state, Value val) {
 		Interval top = new Interval();
 		top.setTop();
 		if (!isIntValue(val)) {
@@ -566,7 +1413,8 @@ public class Analysis extends ForwardBranchedFlowAnalysis<AWrapper> {
 			String var = ((Local) val).getName();
 			Interval interval = null;
 			try {
-				interval = state.get().getBound(man, var);
+				boundCount++;
+				interval = state.getBound(var);
 			} catch (ApronException e) {
 				e.printStackTrace();
 			} 
@@ -578,8 +1426,47 @@ public class Analysis extends ForwardBranchedFlowAnalysis<AWrapper> {
 		return top;
 	}
 
-	public static Manager man;
-	private Environment env;
+	@Override
+	boolean isReachable(Stmt s) {
+		try {
+			return !getFlowBefore(s).isBottom();
+		} catch (ApronException e) {
+			e.printStackTrace();
+			return true;
+		}
+	}
+
+	@Override
+	Range rangeBefore(Stmt s, Value v) {
+		Interval i = getInterval(getFlowBefore(s), v);
+		if (i == null) {
+			return Range.TOP;
+		}
+		return new Range(bound(i.inf(), false), bound(i.sup(), true));
+	}
+
+	/* An APRON bound as a long, rounded inwards since the values are ints. */
+	private static long bound(Scalar b, boolean upper) {
+		if (b.isInfty() != 0) {
+			return b.isInfty() < 0 ? Range.NEG_INF : Range.POS_INF;
+		}
+		double[] d = new double[1];
+		b.toDouble(d, 0);
+		// the cast saturates, bounds beyond long become the infinities
+		return (long) (upper ? Math.floor(d[0]) : Math.ceil(d[0]));
+	}
+
+	public Manager man; // confined to the thread running this analysis
+	private Environment[] envs; // one environment per pack
+	private Lincons1[][] thresholds; // widening thresholds per pack
+	private Abstract1[] entry; // state at the heads of the graph
+	private HashMap<Unit, Transfer> transfers; // compiled transfer function of every unit
+	private Packing packing;
+	private VerifierOptions opts;
+	private Slice slice;
+	private boolean summarize; // track parameters and return value for a summary
+	private String summaryVars[]; // parameters and return value, if summarize is set
+	private HashMap<Unit, Lincons1[]> callSummaries; // summaries of the callees of call sites
 	public UnitGraph g;
 	public String local_ints[]; // integer local variables of the method
 	public static String reals[] = { "x" };
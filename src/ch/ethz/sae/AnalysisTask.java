@@ -0,0 +1,31 @@
+package ch.ethz.sae;
+
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Runs the fixpoint of one method on the pool of the verifier and records
+ * its Fixpoint event. Used for the tiers and for the method summaries.
+ */
+class AnalysisTask<T extends MethodAnalysis<?>> extends RecursiveTask<T> {
+	private static final long serialVersionUID = 1L;
+
+	private final T analysis;
+
+	public AnalysisTask(T analysis) {
+		this.analysis = analysis;
+	}
+
+	/* Stops the fixpoint at its next transfer function, join() still waits for it. */
+	public void cancel() {
+		analysis.cancelled = true;
+	}
+
+	@Override
+	protected T compute() {
+		Metrics.Fixpoint event = new Metrics.Fixpoint();
+		event.begin();
+		analysis.run();
+		Metrics.fixpoint(event, analysis);
+		return analysis;
+	}
+}
@@ -0,0 +1,178 @@
+package ch.ethz.sae;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import soot.ClassProvider;
+import soot.ClassSource;
+import soot.CoffiClassProvider;
+import soot.JavaClassProvider;
+import soot.JimpleClassProvider;
+import soot.JimpleClassSource;
+import soot.Printer;
+import soot.Scene;
+import soot.SootClass;
+import soot.SourceLocator;
+
+/*
+ * On-disk cache of the Jimple of the analysed classes, so warm runs parse
+ * their Jimple instead of reading bytecode and running the jb pack on it. An
+ * entry is the gzipped Jimple of a class, named after the SHA-256 of its
+ * class file, so a changed class file never matches a stale entry. Library
+ * classes always come from bytecode.
+ */
+public class BodyCache implements ClassProvider {
+
+	private static final String SUFFIX = ".jimple.gz";
+
+	private final File dir;
+	private final Set<String> classes; // the only classes looked up in the cache
+	private final HashMap<String, File> entries = new HashMap<String, File>();
+	private final Set<String> hits = new HashSet<String>();
+
+	public BodyCache(File dir, Collection<String> classes) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("can't create cache directory " + dir);
+		}
+		this.dir = dir;
+		this.classes = new HashSet<String>(classes);
+	}
+
+	/* Also looks up a class requested after the cache was opened. */
+	public void include(String className) {
+		classes.add(className);
+	}
+
+	/* Forgets the class file hashes, for a new Soot run after G.reset. */
+	public void reset() {
+		entries.clear();
+		hits.clear();
+	}
+
+	/* Puts the cache in front of Soot's own class providers, again after every G.reset. */
+	public void install() {
+		List<ClassProvider> providers = new ArrayList<ClassProvider>();
+		providers.add(this);
+		providers.add(new CoffiClassProvider());
+		providers.add(new JimpleClassProvider());
+		providers.add(new JavaClassProvider());
+		SourceLocator.v().setClassProviders(providers);
+	}
+
+	@Override
+	public ClassSource find(String className) {
+		if (!classes.contains(className)) {
+			return null;
+		}
+		File entry = entry(className);
+		if (entry == null || !entry.isFile()) {
+			return null;
+		}
+		try {
+			ClassSource source = new JimpleClassSource(className,
+					new GZIPInputStream(new FileInputStream(entry)));
+			hits.add(className);
+			return source;
+		} catch (IOException e) {
+			// a broken entry is rewritten from bytecode
+			return null;
+		}
+	}
+
+	/* Writes the Jimple of a class converted from bytecode, after all its bodies were retrieved. */
+	public void store(SootClass c) throws IOException {
+		if (hits.contains(c.getName())) {
+			return;
+		}
+		File entry = entry(c.getName());
+		if (entry == null) {
+			return;
+		}
+		File tmp = new File(dir, entry.getName() + ".tmp");
+		PrintWriter w = new PrintWriter(new OutputStreamWriter(
+				new GZIPOutputStream(new FileOutputStream(tmp)), "UTF-8"));
+		try {
+			Printer.v().printTo(c, w);
+		} finally {
+			w.close();
+		}
+		if (!tmp.renameTo(entry)) {
+			tmp.delete();
+			throw new IOException("can't write " + entry);
+		}
+	}
+
+	/* The entry for the current class file, null if the class file is not on the class path. */
+	private File entry(String className) {
+		if (entries.containsKey(className)) {
+			return entries.get(className);
+		}
+		String hash = classFileHash(className);
+		File entry = hash == null ? null : new File(dir, hash + SUFFIX);
+		entries.put(className, entry);
+		return entry;
+	}
+
+	/*
+	 * SHA-256 of the class file in hex, null if there is none. Directories on
+	 * the Soot class path (which -batch extends) come first, then the class
+	 * path of the JVM.
+	 */
+	static String classFileHash(String className) {
+		String path = className.replace('.', '/') + ".class";
+		InputStream in = null;
+		for (String entry : Scene.v().getSootClassPath().split(File.pathSeparator)) {
+			File f = new File(entry, path);
+			if (new File(entry).isDirectory() && f.isFile()) {
+				try {
+					in = new FileInputStream(f);
+				} catch (IOException e) {
+					return null;
+				}
+				break;
+			}
+		}
+		if (in == null) {
+			in = ClassLoader.getSystemResourceAsStream(path);
+		}
+		if (in == null) {
+			return null;
+		}
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			byte[] buf = new byte[8192];
+			for (int n = in.read(buf); n > 0; n = in.read(buf)) {
+				md.update(buf, 0, n);
+			}
+			StringBuilder hash = new StringBuilder();
+			for (byte b : md.digest()) {
+				hash.append(String.format("%02x", b));
+			}
+			return hash.toString();
+		} catch (IOException e) {
+			return null;
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package ch.ethz.sae;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import soot.Local;
+import soot.SootMethod;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.DefinitionStmt;
+import soot.jimple.NewExpr;
+import soot.jimple.Stmt;
+import soot.jimple.internal.JInvokeStmt;
+import soot.jimple.internal.JSpecialInvokeExpr;
+import soot.jimple.internal.JVirtualInvokeExpr;
+import soot.jimple.spark.pag.AllocNode;
+import soot.jimple.spark.pag.Node;
+import soot.jimple.spark.pag.PAG;
+import soot.jimple.spark.sets.DoublePointsToSet;
+import soot.jimple.spark.sets.P2SetVisitor;
+
+/*
+ * Checks that every sendJob index is within the bounds of all PrinterArrays
+ * the receiver may point to. Constant sizes come from the allocation index of
+ * the class; sizes computed at run time are taken from the state at the
+ * constructor call of the method, so a new instance is needed for every
+ * method. Receivers the intraprocedural allocation sites resolve do not need
+ * the points-to analysis.
+ */
+public class BoundsChecker implements Checker {
+
+	private final PAG pointsTo; // null if all receivers are resolved locally
+	private final AllocationSites sites; // null if only Spark is used
+	private final AllocationIndex index;
+
+	// valid indices of the sites with a non-constant size constructed in the method
+	private final HashMap<Object, Range> dynamic = new HashMap<Object, Range>();
+
+	public BoundsChecker(PAG pointsTo, AllocationIndex index) {
+		this(pointsTo, null, index);
+	}
+
+	public BoundsChecker(PAG pointsTo, AllocationSites sites, AllocationIndex index) {
+		this.pointsTo = pointsTo;
+		this.sites = sites;
+		this.index = index;
+	}
+
+	public List<Value> checkedValues(Stmt s) {
+		if (s instanceof JInvokeStmt && s.getInvokeExpr() instanceof JSpecialInvokeExpr) {
+			JSpecialInvokeExpr inkulumo = (JSpecialInvokeExpr) s.getInvokeExpr();
+			if (inkulumo.getMethod().getDeclaringClass().toString().equals(Analysis.resourceArrayName)) {
+				return Collections.singletonList(inkulumo.getArg(0));
+			}
+		}
+		if (s instanceof JInvokeStmt && s.getInvokeExpr() instanceof JVirtualInvokeExpr) {
+			JVirtualInvokeExpr invokeExpr = (JVirtualInvokeExpr) s.getInvokeExpr();
+			if (invokeExpr.getMethod().getName().equals(Analysis.functionName)) {
+				return Collections.singletonList(invokeExpr.getArg(0));
+			}
+		}
+		return Collections.emptyList();
+	}
+
+	/* Constructor calls only record the size of the array, sendJob calls are checked. */
+	public boolean canFail(Stmt s) {
+		return !(s.getInvokeExpr() instanceof JSpecialInvokeExpr);
+	}
+
+	public boolean check(Stmt s, MethodAnalysis<?> fixPoint) {
+		if (s.getInvokeExpr() instanceof JSpecialInvokeExpr) {
+			Object site = index.allocationOf(s);
+			if (site != null && index.rangeOf(site) == null) {
+				dynamic.put(site, indexRange(fixPoint.rangeBefore(s, s.getInvokeExpr().getArg(0))));
+			}
+			return true;
+		}
+
+		JVirtualInvokeExpr invokeExpr = (JVirtualInvokeExpr) s.getInvokeExpr();
+		
+		Local base = (Local) invokeExpr.getBase();
+
+		Value v = invokeExpr.getArg(0);
+		Range arrayIndex = fixPoint.rangeBefore(s, v);
+
+		if (sites != null && sites.isResolved(base)) {
+			for (NewExpr site : sites.sitesOf(base)) {
+				if (!contains(rangeOf(site), arrayIndex)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		DoublePointsToSet pts = (DoublePointsToSet) pointsTo
+				.reachingObjects(base);
+		
+		// Visit all allocation sites that the base pointer may reference
+		MyP2SetVisitor visitor = new MyP2SetVisitor(arrayIndex, this);
+		return pts.forall(visitor);
+	}
+
+	/* Valid indices of the allocation site, null if they are not known. */
+	Range rangeOf(Object site) {
+		Range range = index.rangeOf(site);
+		return range != null ? range : dynamic.get(site);
+	}
+
+	/* [0, size - 1] for the smallest possible size, null if it can be 0 or less. */
+	private static Range indexRange(Range size) {
+		return size.lo > 0 ? new Range(0, size.lo - 1) : null;
+	}
+
+	/*
+	 * Describes the allocation sites a sendJob receiver may point to, empty
+	 * for every other statement. Verdicts depend on it beyond the method body.
+	 */
+	public String allocationContext(Stmt s) {
+		if (!(s instanceof JInvokeStmt) || !(s.getInvokeExpr() instanceof JVirtualInvokeExpr)
+				|| !((JVirtualInvokeExpr) s.getInvokeExpr()).getMethod().getName().equals(Analysis.functionName)) {
+			return "";
+		}
+		Local base = (Local) ((JVirtualInvokeExpr) s.getInvokeExpr()).getBase();
+		if (sites != null && sites.isResolved(base)) {
+			// the sites are in the body itself
+			return "local";
+		}
+		// sizes of sites constructed in other methods are part of the context too
+		final List<String> nodes = new ArrayList<String>();
+		((DoublePointsToSet) pointsTo.reachingObjects(base)).forall(new P2SetVisitor() {
+			@Override
+			public void visit(Node n) {
+				if (!(n instanceof AllocNode)) {
+					nodes.add("?=null");
+					return;
+				}
+				AllocNode a = (AllocNode) n;
+				nodes.add(siteOf(a) + "=" + index.rangeOf(a.getNewExpr()));
+			}
+		});
+		Collections.sort(nodes);
+		return nodes.toString();
+	}
+
+	/*
+	 * Names an allocation site by its method and the position of its
+	 * statement in the body. Unlike Spark's node numbers, that does not change
+	 * when other methods of the class are edited.
+	 */
+	private static String siteOf(AllocNode n) {
+		SootMethod m = n.getMethod();
+		if (m == null) {
+			return "?";
+		}
+		int position = -1;
+		if (m.hasActiveBody()) {
+			int i = 0;
+			for (Unit u : m.getActiveBody().getUnits()) {
+				if (u instanceof DefinitionStmt && ((DefinitionStmt) u).getRightOp() == n.getNewExpr()) {
+					position = i;
+					break;
+				}
+				i++;
+			}
+		}
+		return m.getSignature() + "@" + position;
+	}
+
+	/* True if every index in the interval is a valid one. */
+	static boolean contains(Range range, Range index) {
+		return range != null && range.contains(index);
+	}
+}
+
+class MyP2SetVisitor extends P2SetVisitor{
+	
+	public MyP2SetVisitor (Range i, BoundsChecker checker) {
+		this.arrayIndex = i;
+		this.checker = checker;
+		this.returnValue = true;
+	}
+	
+	private Range arrayIndex; 
+	private BoundsChecker checker;
+	
+	@Override
+	public void visit(Node arg0) {
+		Range paInterval = arg0 instanceof AllocNode ? checker.rangeOf(((AllocNode) arg0).getNewExpr()) : null;
+		if (!BoundsChecker.contains(paInterval, this.arrayIndex)) {
+			this.returnValue = false;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package ch.ethz.sae;
+
+/*
+ * Time and memory an analysis may use. The time of a method starts when its
+ * fixpoint starts and also ends with the time of the class. Memory is the
+ * APRON size of the state at a loop head, summed over the packs, which grows
+ * with the native memory the element holds (coefficients for Polka).
+ */
+public class Budget {
+
+	// time per method in nanoseconds, 0 for no limit
+	final long methodNanos;
+
+	// System.nanoTime() when the class is out of time, Long.MAX_VALUE for no limit
+	final long classDeadline;
+
+	// largest loop head state, 0 for no limit
+	final long memory;
+
+	public static final Budget NONE = new Budget(0, Long.MAX_VALUE, 0);
+
+	public Budget(long methodNanos, long classDeadline, long memory) {
+		this.methodNanos = methodNanos;
+		this.classDeadline = classDeadline;
+		this.memory = memory;
+	}
+
+	/* Deadline of an analysis starting now. */
+	long deadline() {
+		if (methodNanos == 0) {
+			return classDeadline;
+		}
+		return Math.min(System.nanoTime() + methodNanos, classDeadline);
+	}
+
+	boolean classExpired() {
+		return System.nanoTime() > classDeadline;
+	}
+
+	/*
+	 * Thrown out of the transfer functions to stop a fixpoint that is over its
+	 * budget. The states computed so far are not a fixpoint and must not be used.
+	 */
+	static class Exceeded extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		Exceeded(String what) {
+			super(what);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package ch.ethz.sae;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import soot.Body;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.Stmt;
+
+/*
+ * The statements of a method some checker is interested in, in unit order.
+ * Built once per method, then all checkers are run in a single pass over it.
+ */
+public class CheckSiteIndex {
+
+	private final List<Stmt> sites = new ArrayList<Stmt>();
+	private final List<int[]> interested = new ArrayList<int[]>();
+	private final List<List<Value>> values = new ArrayList<List<Value>>();
+	private final int[] failable; // sites where each checker can fail
+
+	public CheckSiteIndex(Body body, Checker[] checkers) {
+		failable = new int[checkers.length];
+		for (Unit u : body.getUnits()) {
+			Stmt s = (Stmt) u;
+			List<Value> checked = new ArrayList<Value>();
+			int[] which = new int[checkers.length];
+			int count = 0;
+			for (int i = 0; i < checkers.length; i++) {
+				List<Value> vs = checkers[i].checkedValues(s);
+				if (!vs.isEmpty()) {
+					checked.addAll(vs);
+					which[count++] = i;
+					if (checkers[i].canFail(s)) {
+						failable[i]++;
+					}
+				}
+			}
+			if (count > 0) {
+				int[] trimmed = new int[count];
+				System.arraycopy(which, 0, trimmed, 0, count);
+				sites.add(s);
+				interested.add(trimmed);
+				values.add(checked);
+			}
+		}
+	}
+
+	public boolean isEmpty() {
+		return sites.isEmpty();
+	}
+
+	public int size() {
+		return sites.size();
+	}
+
+	public Stmt site(int i) {
+		return sites.get(i);
+	}
+
+	/* Number of sites where the checker at the given position can fail. */
+	public int count(int checker) {
+		return failable[checker];
+	}
+
+	/* All sites, for constant time lookups. */
+	public Set<Stmt> siteSet() {
+		return Collections.unmodifiableSet(new HashSet<Stmt>(sites));
+	}
+
+	/* The values the checkers look at in the i-th site. */
+	public List<Value> checkedValues(int i) {
+		return values.get(i);
+	}
+
+	/*
+	 * Runs the checkers against the fixpoint. A null checker is not run and
+	 * counts as holding. Returns, per checker, whether it holds on all sites.
+	 */
+	public boolean[] check(MethodAnalysis<?> fixPoint, Checker[] checkers) {
+		boolean[] holds = new boolean[checkers.length];
+		int running = 0;
+		for (int i = 0; i < checkers.length; i++) {
+			holds[i] = true;
+			if (checkers[i] != null) {
+				running++;
+			}
+		}
+
+		// Once a checker fails, its remaining sites are skipped
+		for (int i = 0; i < sites.size() && running > 0; i++) {
+			Stmt s = sites.get(i);
+			if (!fixPoint.isReachable(s)) {
+				// unreachable code
+				continue;
+			}
+
+			for (int c : interested.get(i)) {
+				if (checkers[c] != null && holds[c] && !checkers[c].check(s, fixPoint)) {
+					holds[c] = false;
+					running--;
+				}
+			}
+		}
+		return holds;
+	}
+}
@@ -0,0 +1,23 @@
+package ch.ethz.sae;
+
+import java.util.List;
+
+import soot.Value;
+import soot.jimple.Stmt;
+
+/*
+ * A property verified at individual statements. The check sites of all
+ * checkers are indexed once per method (see CheckSiteIndex), so a checker
+ * is only called back for the statements it is interested in.
+ */
+public interface Checker {
+
+	/* The values the checker looks at in this statement, empty if it does not care about it. */
+	List<Value> checkedValues(Stmt s);
+
+	/* False for the sites the checker only takes note of, where check always holds. */
+	boolean canFail(Stmt s);
+
+	/* Checks a reachable site, returns false if the property may be violated there. */
+	boolean check(Stmt s, MethodAnalysis<?> fixPoint);
+}
@@ -0,0 +1,90 @@
+package ch.ethz.sae;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import soot.Scene;
+
+/*
+ * Expands a batch source (a directory of class files, a jar or a text file
+ * with one class name per line) into the list of class names to verify.
+ */
+public class ClassCollector {
+
+	public static List<String> collect(String source) throws IOException {
+		File f = new File(source);
+		List<String> names = new ArrayList<String>();
+
+		if (f.isDirectory()) {
+			extendSootClassPath(f.getPath());
+			collectDirectory(f, "", names);
+			Collections.sort(names);
+		} else if (f.getName().endsWith(".jar")) {
+			extendSootClassPath(f.getPath());
+			collectJar(f, names);
+			Collections.sort(names);
+		} else {
+			collectList(f, names);
+		}
+
+		return names;
+	}
+
+	private static void collectDirectory(File dir, String prefix, List<String> names) {
+		File[] entries = dir.listFiles();
+		if (entries == null) {
+			return;
+		}
+		for (File entry : entries) {
+			if (entry.isDirectory()) {
+				collectDirectory(entry, prefix + entry.getName() + ".", names);
+			} else if (entry.getName().endsWith(".class")) {
+				String name = entry.getName();
+				names.add(prefix + name.substring(0, name.length() - ".class".length()));
+			}
+		}
+	}
+
+	private static void collectJar(File jar, List<String> names) throws IOException {
+		JarFile jf = new JarFile(jar);
+		try {
+			Enumeration<JarEntry> entries = jf.entries();
+			while (entries.hasMoreElements()) {
+				String name = entries.nextElement().getName();
+				if (name.endsWith(".class")) {
+					name = name.substring(0, name.length() - ".class".length());
+					names.add(name.replace('/', '.'));
+				}
+			}
+		} finally {
+			jf.close();
+		}
+	}
+
+	private static void collectList(File list, List<String> names) throws IOException {
+		BufferedReader in = new BufferedReader(new FileReader(list));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.length() > 0 && !line.startsWith("#")) {
+					names.add(line);
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void extendSootClassPath(String path) {
+		Scene.v().setSootClassPath(Scene.v().getSootClassPath() + File.pathSeparator + path);
+	}
+}
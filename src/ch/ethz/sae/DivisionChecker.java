@@ -0,0 +1,47 @@
+package ch.ethz.sae;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import soot.Value;
+import soot.ValueBox;
+import soot.jimple.IntConstant;
+import soot.jimple.Stmt;
+import soot.jimple.internal.JDivExpr;
+import soot.jimple.internal.JimpleLocal;
+
+/* Checks that no divisor can be zero. */
+public class DivisionChecker implements Checker {
+
+	public List<Value> checkedValues(Stmt s) {
+		List<Value> divisors = new ArrayList<Value>();
+		for (ValueBox inani : s.getUseBoxes()) {
+			if (inani.getValue() instanceof JDivExpr) {
+				divisors.add(((JDivExpr) inani.getValue()).getOp2());
+			}
+		}
+		return divisors;
+	}
+
+	public boolean canFail(Stmt s) {
+		return true;
+	}
+
+	public boolean check(Stmt s, MethodAnalysis<?> fixPoint) {
+		for (Value divisor : checkedValues(s)) {
+			if ( divisor instanceof JimpleLocal ) {
+				if (fixPoint.rangeBefore(s, divisor).contains(0)) {
+					return false;
+				}
+			} else if (divisor instanceof IntConstant) {
+				if ( ((IntConstant) divisor).value == 0 ) {
+					return false;
+				}
+			}
+			else {
+				System.err.println("Unexpected divisor: " + divisor.toString() + " of type " + divisor.getType().toString());
+			}
+		}
+		return true;
+	}
+}
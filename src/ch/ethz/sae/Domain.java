@@ -0,0 +1,32 @@
+package ch.ethz.sae;
+
+import apron.Box;
+import apron.Manager;
+import apron.Octagon;
+import apron.Polka;
+
+/*
+ * Domains the analysis can run with, from the cheapest to the most precise.
+ * INTERVAL is run by IntervalAnalysis without APRON, the others by Analysis.
+ */
+public enum Domain {
+	INTERVAL, BOX, OCTAGON, POLKA;
+
+	public Manager newManager() {
+		switch (this) {
+		case INTERVAL:
+			throw new IllegalStateException("the interval tier does not use APRON");
+		case BOX:
+			return new Box();
+		case OCTAGON:
+			return new Octagon();
+		default:
+			return new Polka(true);
+		}
+	}
+
+	/* Ranks what the domains can prove, intervals and boxes prove the same checks. */
+	public int precision() {
+		return this == INTERVAL ? BOX.ordinal() : ordinal();
+	}
+}
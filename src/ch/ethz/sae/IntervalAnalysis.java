@@ -0,0 +1,629 @@
+package ch.ethz.sae;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+import soot.IntegerType;
+import soot.Local;
+import soot.Unit;
+import soot.UnitBox;
+import soot.Value;
+import soot.jimple.DefinitionStmt;
+import soot.jimple.IfStmt;
+import soot.jimple.IntConstant;
+import soot.jimple.InvokeExpr;
+import soot.jimple.Stmt;
+import soot.jimple.internal.AbstractBinopExpr;
+import soot.jimple.internal.JAddExpr;
+import soot.jimple.internal.JDivExpr;
+import soot.jimple.internal.JEqExpr;
+import soot.jimple.internal.JGeExpr;
+import soot.jimple.internal.JGtExpr;
+import soot.jimple.internal.JLeExpr;
+import soot.jimple.internal.JLtExpr;
+import soot.jimple.internal.JMulExpr;
+import soot.jimple.internal.JNeExpr;
+import soot.jimple.internal.JSpecialInvokeExpr;
+import soot.jimple.internal.JSubExpr;
+import soot.toolkits.graph.UnitGraph;
+import soot.util.Chain;
+
+/*
+ * The interval tier: an interval per int local, in plain Java. Intervals
+ * prove the checks of most methods, whose guards and indices compare single
+ * locals with constants, at a fraction of the cost of crossing into APRON,
+ * and the methods they cannot prove go on to the APRON tiers.
+ *
+ * Same engine as Analysis (weak topological ordering, delayed widening with
+ * thresholds, bounded descending steps), but every state is allocated before
+ * the fixpoint starts and updated in place, so iterating allocates no states.
+ * Ints are treated as mathematical integers, like the APRON domains do.
+ */
+public class IntervalAnalysis extends MethodAnalysis<IntervalState> {
+
+	private final UnitGraph g;
+	private final Slice slice; // null if the whole method is analysed
+	private final HashMap<Local, Integer> locals = new HashMap<Local, Integer>();
+	private final HashMap<Unit, Step> steps = new HashMap<Unit, Step>();
+	private final long[] thresholds;
+
+	// states on the edges into every unit, the heads of the graph also get the entry state
+	private HashMap<Unit, IntervalState[]> inEdges;
+	private HashMap<Unit, Integer> delays; // joins in a row moving a bound before widening, per head
+	private HashMap<Unit, int[]> streaks; // joins in a row that moved each bound of a head
+	private List<Wto.Element> wto;
+	private IntervalState entry;
+	private IntervalState scratch; // inflow of the unit being updated
+
+	public IntervalAnalysis(UnitGraph g, Slice slice) {
+		super(g, Domain.INTERVAL);
+		this.g = g;
+		this.slice = slice;
+		for (Local l : g.getBody().getLocals()) {
+			if (l.getType() instanceof IntegerType) {
+				locals.put(l, locals.size());
+			}
+		}
+		TreeSet<Long> constants = new TreeSet<Long>();
+		for (Unit u : g.getBody().getUnits()) {
+			steps.put(u, compile((Stmt) u, constants));
+		}
+		thresholds = new long[constants.size()];
+		int i = 0;
+		for (long k : constants) {
+			thresholds[i++] = k;
+		}
+	}
+
+	@Override
+	void run() {
+		long start = System.nanoTime();
+		deadline = budget.deadline();
+		try {
+			doAnalysis();
+			if (!delays.isEmpty()) {
+				// without loops there was no widening to recover from
+				for (int step = 0; step < Analysis.NARROWING_STEPS; step++) {
+					descend(wto);
+				}
+			}
+		} catch (Budget.Exceeded e) {
+			exceeded = e.getMessage();
+			release();
+		}
+		fixpointNanos = System.nanoTime() - start;
+	}
+
+	@Override
+	void release() {
+		unitToBeforeFlow.clear();
+		unitToAfterFallFlow.clear();
+		unitToAfterBranchFlow.clear();
+		inEdges = null;
+	}
+
+	@Override
+	boolean isReachable(Stmt s) {
+		return !getFlowBefore(s).bottom;
+	}
+
+	@Override
+	Range rangeBefore(Stmt s, Value v) {
+		boundCount++;
+		if (v instanceof IntConstant) {
+			return new Range(((IntConstant) v).value, ((IntConstant) v).value);
+		}
+		Integer local = locals.get(v);
+		if (local == null) {
+			return Range.TOP;
+		}
+		IntervalState state = getFlowBefore(s);
+		return new Range(state.lo(local), state.hi(local));
+	}
+
+	/* === Transfer functions === */
+
+	// operand kinds of a Step, a local or a constant
+	private static final int CONSTANT = -1;
+
+	// operators of an assignment
+	private static final int COPY = 0, ADD = 1, SUB = 2, MUL = 3, DIV = 4, ANY = 5;
+
+	// conditions of a guard
+	private static final int EQ = 0, NE = 1, LT = 2, LE = 3, GT = 4, GE = 5;
+
+	/*
+	 * Compiled transfer function of a statement: local = a op b for an
+	 * assignment, a cmp b on the branch of an if statement (its negation on
+	 * the fall through), or nothing. Operands are local numbers, or CONSTANT
+	 * with the value in ca or cb.
+	 */
+	private static final class Step {
+		static final Step IDENTITY = new Step();
+
+		boolean guard;
+		int target = CONSTANT; // assigned local, CONSTANT if none
+		int op;
+		int a = CONSTANT, b = CONSTANT;
+		long ca, cb;
+	}
+
+	private Step compile(Stmt s, TreeSet<Long> constants) {
+		if (slice != null && !slice.contains(s)) {
+			// cannot affect any check, the state passes unchanged
+			return Step.IDENTITY;
+		}
+		if (s instanceof DefinitionStmt) {
+			Integer target = locals.get(((DefinitionStmt) s).getLeftOp());
+			if (target == null) {
+				// only int locals are tracked
+				return Step.IDENTITY;
+			}
+			Step step = new Step();
+			step.target = target;
+			step.op = ANY;
+			Value right = ((DefinitionStmt) s).getRightOp();
+			if (operand(right, step, true)) {
+				step.op = COPY;
+			} else if (right instanceof AbstractBinopExpr
+					&& operand(((AbstractBinopExpr) right).getOp1(), step, true)
+					&& operand(((AbstractBinopExpr) right).getOp2(), step, false)) {
+				if (right instanceof JAddExpr) {
+					step.op = ADD;
+				} else if (right instanceof JSubExpr) {
+					step.op = SUB;
+				} else if (right instanceof JMulExpr) {
+					step.op = MUL;
+				} else if (right instanceof JDivExpr) {
+					step.op = DIV;
+				}
+			}
+			// calls, fields, parameters and the other operators give any value
+			return step;
+		}
+		if (s instanceof IfStmt && ((IfStmt) s).getCondition() instanceof AbstractBinopExpr) {
+			AbstractBinopExpr c = (AbstractBinopExpr) ((IfStmt) s).getCondition();
+			Step step = new Step();
+			step.guard = true;
+			if (c instanceof JEqExpr) {
+				step.op = EQ;
+			} else if (c instanceof JNeExpr) {
+				step.op = NE;
+			} else if (c instanceof JLtExpr) {
+				step.op = LT;
+			} else if (c instanceof JLeExpr) {
+				step.op = LE;
+			} else if (c instanceof JGtExpr) {
+				step.op = GT;
+			} else if (c instanceof JGeExpr) {
+				step.op = GE;
+			} else {
+				return Step.IDENTITY;
+			}
+			if (!operand(c.getOp1(), step, true) || !operand(c.getOp2(), step, false)) {
+				// comparisons of references, longs or doubles
+				return Step.IDENTITY;
+			}
+			// the same thresholds as Analysis.buildThresholds
+			for (Value v : new Value[] { c.getOp1(), c.getOp2() }) {
+				if (v instanceof IntConstant) {
+					long k = ((IntConstant) v).value;
+					constants.add(k - 1);
+					constants.add(k);
+					constants.add(k + 1);
+				}
+			}
+			return step;
+		}
+		if (s.containsInvokeExpr() && s.getInvokeExpr() instanceof JSpecialInvokeExpr) {
+			InvokeExpr e = s.getInvokeExpr();
+			if (e.getMethod().getDeclaringClass().toString().equals(Analysis.resourceArrayName)
+					&& e.getArgCount() > 0 && e.getArg(0) instanceof IntConstant) {
+				long size = ((IntConstant) e.getArg(0)).value;
+				constants.add(0L);
+				constants.add(size - 1);
+				constants.add(size);
+			}
+		}
+		return Step.IDENTITY;
+	}
+
+	/* Sets the first or second operand of the step, false if the value is neither an int local nor a constant. */
+	private boolean operand(Value v, Step step, boolean first) {
+		int local;
+		long value = 0;
+		if (v instanceof IntConstant) {
+			local = CONSTANT;
+			value = ((IntConstant) v).value;
+		} else if (locals.containsKey(v)) {
+			local = locals.get(v);
+		} else {
+			return false;
+		}
+		if (first) {
+			step.a = local;
+			step.ca = value;
+		} else {
+			step.b = local;
+			step.cb = value;
+		}
+		return true;
+	}
+
+	@Override
+	protected void flowThrough(IntervalState in, Unit u, List<IntervalState> fallOut,
+			List<IntervalState> branchOuts) {
+		flowThroughCount++;
+		checkTime();
+		Step step = steps.get(u);
+		for (int i = 0; i < fallOut.size(); i++) {
+			apply(step, in, fallOut.get(i), false);
+		}
+		for (int i = 0; i < branchOuts.size(); i++) {
+			apply(step, in, branchOuts.get(i), true);
+		}
+	}
+
+	private void apply(Step step, IntervalState in, IntervalState out, boolean branch) {
+		out.copy(in);
+		if (in.bottom) {
+			return;
+		}
+		if (step.guard) {
+			meetCount++;
+			refine(out, branch ? step.op : negate(step.op), step.a, step.ca, step.b, step.cb);
+			return;
+		}
+		if (step.target == CONSTANT) {
+			return;
+		}
+		assignCount++;
+		long alo = lo(in, step.a, step.ca), ahi = hi(in, step.a, step.ca);
+		long blo = lo(in, step.b, step.cb), bhi = hi(in, step.b, step.cb);
+		switch (step.op) {
+		case COPY:
+			out.set(step.target, alo, ahi);
+			break;
+		case ADD:
+			out.set(step.target, add(alo, blo), add(ahi, bhi));
+			break;
+		case SUB:
+			out.set(step.target, add(alo, negate(bhi)), add(ahi, negate(blo)));
+			break;
+		case MUL: {
+			long p1 = mul(alo, blo), p2 = mul(alo, bhi), p3 = mul(ahi, blo), p4 = mul(ahi, bhi);
+			out.set(step.target, Math.min(Math.min(p1, p2), Math.min(p3, p4)),
+					Math.max(Math.max(p1, p2), Math.max(p3, p4)));
+			break;
+		}
+		case DIV: {
+			// a divisor of 0 throws, only the nonzero parts of the divisor matter
+			long lo = Range.POS_INF, hi = Range.NEG_INF;
+			if (bhi >= 1) {
+				long c = Math.max(blo, 1);
+				long q1 = div(alo, c), q2 = div(alo, bhi), q3 = div(ahi, c), q4 = div(ahi, bhi);
+				lo = Math.min(lo, Math.min(Math.min(q1, q2), Math.min(q3, q4)));
+				hi = Math.max(hi, Math.max(Math.max(q1, q2), Math.max(q3, q4)));
+			}
+			if (blo <= -1) {
+				long d = Math.min(bhi, -1);
+				long q1 = div(alo, blo), q2 = div(alo, d), q3 = div(ahi, blo), q4 = div(ahi, d);
+				lo = Math.min(lo, Math.min(Math.min(q1, q2), Math.min(q3, q4)));
+				hi = Math.max(hi, Math.max(Math.max(q1, q2), Math.max(q3, q4)));
+			}
+			out.set(step.target, lo, hi);
+			break;
+		}
+		default:
+			out.set(step.target, Range.NEG_INF, Range.POS_INF);
+		}
+	}
+
+	/* Restricts the state to the states where a cmp b holds. */
+	private static void refine(IntervalState s, int cmp, int a, long ca, int b, long cb) {
+		if (cmp == GT) {
+			refine(s, LT, b, cb, a, ca);
+			return;
+		}
+		if (cmp == GE) {
+			refine(s, LE, b, cb, a, ca);
+			return;
+		}
+		long alo = lo(s, a, ca), ahi = hi(s, a, ca);
+		long blo = lo(s, b, cb), bhi = hi(s, b, cb);
+		switch (cmp) {
+		case LT:
+			restrict(s, a, alo, Math.min(ahi, add(bhi, -1)));
+			restrict(s, b, Math.max(blo, add(alo, 1)), bhi);
+			break;
+		case LE:
+			restrict(s, a, alo, Math.min(ahi, bhi));
+			restrict(s, b, Math.max(blo, alo), bhi);
+			break;
+		case EQ:
+			restrict(s, a, Math.max(alo, blo), Math.min(ahi, bhi));
+			restrict(s, b, Math.max(alo, blo), Math.min(ahi, bhi));
+			break;
+		default:
+			// a != b only cuts off a bound equal to the other side's only value
+			if (blo == bhi) {
+				restrict(s, a, alo == blo ? alo + 1 : alo, ahi == blo ? ahi - 1 : ahi);
+			}
+			if (alo == ahi) {
+				restrict(s, b, blo == alo ? blo + 1 : blo, bhi == alo ? bhi - 1 : bhi);
+			}
+		}
+	}
+
+	private static void restrict(IntervalState s, int local, long lo, long hi) {
+		if (s.bottom) {
+			return;
+		}
+		if (local == CONSTANT) {
+			// nothing to narrow, but the condition may not hold at all
+			if (lo > hi) {
+				s.bottom = true;
+			}
+			return;
+		}
+		s.set(local, lo, hi);
+	}
+
+	private static int negate(int cmp) {
+		switch (cmp) {
+		case EQ:
+			return NE;
+		case NE:
+			return EQ;
+		case LT:
+			return GE;
+		case LE:
+			return GT;
+		case GT:
+			return LE;
+		default:
+			return LT;
+		}
+	}
+
+	private static long lo(IntervalState s, int local, long constant) {
+		return local == CONSTANT ? constant : s.lo(local);
+	}
+
+	private static long hi(IntervalState s, int local, long constant) {
+		return local == CONSTANT ? constant : s.hi(local);
+	}
+
+	/* Sum of two bounds of the same side, finite bounds are ints so it cannot overflow. */
+	private static long add(long x, long y) {
+		if (x == Range.NEG_INF || y == Range.NEG_INF) {
+			return Range.NEG_INF;
+		}
+		if (x == Range.POS_INF || y == Range.POS_INF) {
+			return Range.POS_INF;
+		}
+		return x + y;
+	}
+
+	private static long negate(long x) {
+		if (x == Range.NEG_INF) {
+			return Range.POS_INF;
+		}
+		if (x == Range.POS_INF) {
+			return Range.NEG_INF;
+		}
+		return -x;
+	}
+
+	private static long mul(long x, long y) {
+		if (x == 0 || y == 0) {
+			return 0;
+		}
+		if (isInfinite(x) || isInfinite(y)) {
+			return (x > 0) == (y > 0) ? Range.POS_INF : Range.NEG_INF;
+		}
+		return x * y;
+	}
+
+	/* Quotient of two bounds, y is not 0; rounds towards zero like Java. */
+	private static long div(long x, long y) {
+		if (isInfinite(y)) {
+			// large divisors give 0, which is also in the range of every larger dividend
+			return 0;
+		}
+		if (isInfinite(x)) {
+			return (x > 0) == (y > 0) ? Range.POS_INF : Range.NEG_INF;
+		}
+		return x / y;
+	}
+
+	private static boolean isInfinite(long x) {
+		return x == Range.NEG_INF || x == Range.POS_INF;
+	}
+
+	/* === Fixpoint engine, see Analysis.doAnalysis === */
+
+	@Override
+	protected void doAnalysis() {
+		int n = locals.size();
+		for (Unit u : g) {
+			unitToBeforeFlow.put(u, newInitialFlow());
+			ArrayList<IntervalState> fall = new ArrayList<IntervalState>();
+			if (u.fallsThrough()) {
+				fall.add(newInitialFlow());
+			}
+			unitToAfterFallFlow.put(u, fall);
+			ArrayList<IntervalState> branch = new ArrayList<IntervalState>();
+			for (int i = 0; i < u.getUnitBoxes().size(); i++) {
+				branch.add(newInitialFlow());
+			}
+			unitToAfterBranchFlow.put(u, branch);
+		}
+		entry = entryInitialFlow();
+		scratch = new IntervalState(n, true);
+
+		// the edges are looked up once, Soot builds some of the lists on every call
+		HashMap<Unit, List<IntervalState>> edges = new HashMap<Unit, List<IntervalState>>();
+		for (Unit u : g) {
+			edges.put(u, new ArrayList<IntervalState>());
+		}
+		Chain<Unit> units = g.getBody().getUnits();
+		for (Unit p : g) {
+			for (Unit u : g.getSuccsOf(p)) {
+				if (p.fallsThrough() && units.getSuccOf(p) == u) {
+					edges.get(u).add(unitToAfterFallFlow.get(p).get(0));
+				}
+				List<UnitBox> boxes = p.getUnitBoxes();
+				for (int i = 0; i < boxes.size(); i++) {
+					if (boxes.get(i).getUnit() == u) {
+						edges.get(u).add(unitToAfterBranchFlow.get(p).get(i));
+					}
+				}
+			}
+		}
+		inEdges = new HashMap<Unit, IntervalState[]>();
+		for (Unit u : g) {
+			inEdges.put(u, edges.get(u).toArray(new IntervalState[0]));
+		}
+
+		wto = Wto.compute(g);
+		delays = new HashMap<Unit, Integer>();
+		streaks = new HashMap<Unit, int[]>();
+		nest(wto);
+		iterate(wto);
+	}
+
+	/*
+	 * Widening delays like Analysis: inner loops have to stabilise first, so
+	 * a bound has to move in one more join in a row per component nested in
+	 * the component. Returns the number of components in the elements.
+	 */
+	private int nest(List<Wto.Element> elements) {
+		int components = 0;
+		for (Wto.Element e : elements) {
+			if (e.isComponent()) {
+				int inner = nest(e.body);
+				delays.put(e.head, Math.min(Analysis.WIDENING_DELAY + inner, Analysis.WIDENING_THRESHOLD));
+				streaks.put(e.head, new int[2 * locals.size()]);
+				components += inner + 1;
+			}
+		}
+		return components;
+	}
+
+	private void iterate(List<Wto.Element> elements) {
+		for (Wto.Element e : elements) {
+			if (e.isComponent()) {
+				stabilize(e);
+			} else {
+				inflow(e.head);
+				update(e.head, scratch);
+			}
+		}
+	}
+
+	/*
+	 * Iterates a component until the state at its head no longer grows. The
+	 * head widens once a bound kept moving for its delay, bounds that settle
+	 * by themselves are joined up to Analysis.WIDENING_THRESHOLD times.
+	 */
+	private void stabilize(Wto.Element c) {
+		int delay = delays.get(c.head);
+		int[] streak = streaks.get(c.head);
+		Arrays.fill(streak, 0);
+		int joins = 0;
+		inflow(c.head);
+		update(c.head, scratch);
+		IntervalState head = getFlowBefore(c.head);
+		while (true) {
+			iterationCount++;
+			iterate(c.body);
+			inflow(c.head);
+			if (scratch.isIncludedIn(head)) {
+				return;
+			}
+			mergeCount++;
+			boolean steady = moved(head, scratch, streak) >= delay;
+			if (++joins >= Analysis.WIDENING_THRESHOLD || steady) {
+				wideningCount++;
+				head.widen(scratch, thresholds);
+			} else {
+				joinCount++;
+				head.join(scratch);
+			}
+			flowThrough(head, c.head, unitToAfterFallFlow.get(c.head), unitToAfterBranchFlow.get(c.head));
+		}
+	}
+
+	/* Counts the joins in a row each bound of the head moved in, returns the longest run. */
+	private static int moved(IntervalState head, IntervalState in, int[] streak) {
+		if (head.bottom || in.bottom) {
+			return 0;
+		}
+		int longest = 0;
+		for (int i = 0; i < streak.length; i++) {
+			boolean grows = i % 2 == 0 ? in.bounds[i] < head.bounds[i] : in.bounds[i] > head.bounds[i];
+			streak[i] = grows ? streak[i] + 1 : 0;
+			longest = Math.max(longest, streak[i]);
+		}
+		return longest;
+	}
+
+	/* One descending step: every head takes its inflow instead of the join with its old state. */
+	private void descend(List<Wto.Element> elements) {
+		for (Wto.Element e : elements) {
+			inflow(e.head);
+			update(e.head, scratch);
+			if (e.isComponent()) {
+				descend(e.body);
+			}
+		}
+	}
+
+	private void update(Unit u, IntervalState in) {
+		IntervalState before = getFlowBefore(u);
+		if (before.equals(in)) {
+			// same input as last time, so the same output
+			return;
+		}
+		before.copy(in);
+		flowThrough(before, u, unitToAfterFallFlow.get(u), unitToAfterBranchFlow.get(u));
+	}
+
+	/* Join of the states on the edges into the unit, into scratch. */
+	private void inflow(Unit u) {
+		scratch.bottom = true;
+		if (g.getHeads().contains(u)) {
+			scratch.copy(entry);
+		}
+		for (IntervalState edge : inEdges.get(u)) {
+			mergeCount++;
+			scratch.join(edge);
+		}
+	}
+
+	@Override
+	protected void merge(IntervalState in1, IntervalState in2, IntervalState out) {
+		out.copy(in1);
+		out.join(in2);
+	}
+
+	@Override
+	protected void copy(IntervalState source, IntervalState dest) {
+		dest.copy(source);
+	}
+
+	@Override
+	protected IntervalState newInitialFlow() {
+		return new IntervalState(locals.size(), true);
+	}
+
+	@Override
+	protected IntervalState entryInitialFlow() {
+		// parameters and uninitialised locals may be anything
+		return new IntervalState(locals.size(), false);
+	}
+}
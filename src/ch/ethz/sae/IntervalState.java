@@ -0,0 +1,166 @@
+package ch.ethz.sae;
+
+import java.util.Arrays;
+
+/*
+ * State of the interval tier: the bounds of every int local of the method in
+ * one array, the lower bound of local i at 2 * i and the upper one at
+ * 2 * i + 1, with Range.NEG_INF and Range.POS_INF for the infinities. The
+ * fixpoint allocates one state per edge and updates them in place.
+ *
+ * Finite bounds are kept within the int range, anything beyond is as good as
+ * infinite, so the products of two bounds still fit in a long.
+ */
+public final class IntervalState {
+
+	final long[] bounds;
+	boolean bottom;
+
+	IntervalState(int locals, boolean bottom) {
+		bounds = new long[2 * locals];
+		if (bottom) {
+			this.bottom = true;
+		} else {
+			setTop();
+		}
+	}
+
+	void setTop() {
+		for (int i = 0; i < bounds.length; i += 2) {
+			bounds[i] = Range.NEG_INF;
+			bounds[i + 1] = Range.POS_INF;
+		}
+		bottom = false;
+	}
+
+	void copy(IntervalState src) {
+		System.arraycopy(src.bounds, 0, bounds, 0, bounds.length);
+		bottom = src.bottom;
+	}
+
+	long lo(int local) {
+		return bounds[2 * local];
+	}
+
+	long hi(int local) {
+		return bounds[2 * local + 1];
+	}
+
+	/* Sets the bounds of a local, an empty range makes the state unreachable. */
+	void set(int local, long lo, long hi) {
+		// widen the bounds outside of int to the infinities, or back to the int range
+		if (lo < Integer.MIN_VALUE) {
+			lo = Range.NEG_INF;
+		} else if (lo > Integer.MAX_VALUE) {
+			lo = Integer.MAX_VALUE;
+		}
+		if (hi > Integer.MAX_VALUE) {
+			hi = Range.POS_INF;
+		} else if (hi < Integer.MIN_VALUE) {
+			hi = Integer.MIN_VALUE;
+		}
+		if (lo > hi) {
+			bottom = true;
+			return;
+		}
+		bounds[2 * local] = lo;
+		bounds[2 * local + 1] = hi;
+	}
+
+	void join(IntervalState o) {
+		if (o.bottom) {
+			return;
+		}
+		if (bottom) {
+			copy(o);
+			return;
+		}
+		for (int i = 0; i < bounds.length; i += 2) {
+			bounds[i] = Math.min(bounds[i], o.bounds[i]);
+			bounds[i + 1] = Math.max(bounds[i + 1], o.bounds[i + 1]);
+		}
+	}
+
+	/* Widens with a larger state, a growing bound jumps to the next threshold or infinity. */
+	void widen(IntervalState o, long[] thresholds) {
+		if (o.bottom) {
+			return;
+		}
+		if (bottom) {
+			copy(o);
+			return;
+		}
+		for (int i = 0; i < bounds.length; i += 2) {
+			if (o.bounds[i] < bounds[i]) {
+				bounds[i] = below(o.bounds[i], thresholds);
+			}
+			if (o.bounds[i + 1] > bounds[i + 1]) {
+				bounds[i + 1] = above(o.bounds[i + 1], thresholds);
+			}
+		}
+	}
+
+	/* The largest threshold not above v, or minus infinity. */
+	private static long below(long v, long[] thresholds) {
+		int i = Arrays.binarySearch(thresholds, v);
+		if (i >= 0) {
+			return v;
+		}
+		int insertion = -i - 1;
+		return insertion == 0 ? Range.NEG_INF : thresholds[insertion - 1];
+	}
+
+	/* The smallest threshold not below v, or plus infinity. */
+	private static long above(long v, long[] thresholds) {
+		int i = Arrays.binarySearch(thresholds, v);
+		if (i >= 0) {
+			return v;
+		}
+		int insertion = -i - 1;
+		return insertion == thresholds.length ? Range.POS_INF : thresholds[insertion];
+	}
+
+	boolean isIncludedIn(IntervalState o) {
+		if (bottom) {
+			return true;
+		}
+		if (o.bottom) {
+			return false;
+		}
+		for (int i = 0; i < bounds.length; i += 2) {
+			if (bounds[i] < o.bounds[i] || bounds[i + 1] > o.bounds[i + 1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof IntervalState)) {
+			return false;
+		}
+		IntervalState s = (IntervalState) o;
+		if (bottom || s.bottom) {
+			return bottom == s.bottom;
+		}
+		return Arrays.equals(bounds, s.bounds);
+	}
+
+	@Override
+	public int hashCode() {
+		return bottom ? 0 : Arrays.hashCode(bounds);
+	}
+
+	@Override
+	public String toString() {
+		if (bottom) {
+			return "bottom";
+		}
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < bounds.length; i += 2) {
+			sb.append(i == 0 ? "" : " ").append(new Range(bounds[i], bounds[i + 1]));
+		}
+		return sb.toString();
+	}
+}
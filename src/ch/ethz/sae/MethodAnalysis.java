@@ -0,0 +1,76 @@
+package ch.ethz.sae;
+
+import soot.Value;
+import soot.jimple.Stmt;
+import soot.toolkits.graph.UnitGraph;
+import soot.toolkits.scalar.ForwardBranchedFlowAnalysis;
+
+/*
+ * The fixpoint of one method as the verifier schedules it and the checkers
+ * read it: Analysis runs it with an APRON domain, IntervalAnalysis with
+ * plain Java intervals. Holds what they share, the counters reported by
+ * -metrics and the budget the fixpoint is cancelled with.
+ */
+public abstract class MethodAnalysis<A> extends ForwardBranchedFlowAnalysis<A> {
+
+	public Domain domain;
+	private String signature; // of the method, read by the worker that runs the analysis
+
+	// Calls of the transfer and join functions, for the per-class report
+	int flowThroughCount = 0;
+	int mergeCount = 0;
+
+	// Component iterations and domain operations, for the Fixpoint event and -metrics
+	int iterationCount = 0;
+	int joinCount = 0;
+	int wideningCount = 0;
+	int meetCount = 0;
+	int assignCount = 0;
+	int boundCount = 0;
+	long fixpointNanos = 0;
+
+	// Largest state at a loop head, summed over the packs, -1 unless measured
+	int headConstraints = -1;
+	int headGenerators = -1;
+
+	// Cancels the fixpoint between transfer functions once it is used up
+	Budget budget = Budget.NONE;
+	long deadline;
+
+	// why the fixpoint was cancelled, null if it completed
+	String exceeded = null;
+
+	// set by another thread once the result of the method no longer matters
+	volatile boolean cancelled = false;
+
+	protected MethodAnalysis(UnitGraph g, Domain domain) {
+		super(g);
+		this.domain = domain;
+		this.signature = g.getBody().getMethod().getSignature();
+	}
+
+	/* Computes the fixpoint, see exceeded if it did not complete. */
+	abstract void run();
+
+	/* Drops the states, once the checks are done. */
+	abstract void release();
+
+	/* False if no execution reaches the statement. */
+	abstract boolean isReachable(Stmt s);
+
+	/* The values an int may have before a reachable statement, TOP for other values. */
+	abstract Range rangeBefore(Stmt s, Value v);
+
+	String methodSignature() {
+		return signature;
+	}
+
+	void checkTime() {
+		if (cancelled) {
+			throw new Budget.Exceeded("cancelled");
+		}
+		if (System.nanoTime() > deadline) {
+			throw new Budget.Exceeded("over time budget");
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package ch.ethz.sae;
+
+import soot.SootMethod;
+
+/* What the checks established for one method of the analysed class. */
+public class MethodResult {
+
+	public final SootMethod method;
+
+	public boolean boundsSafe;
+	public boolean divisionSafe;
+
+	// the last domain the method was analysed with
+	public Domain domain;
+
+	// how the method went over its budget and what was reported instead, null if it did not
+	public String degraded;
+
+	// not analysed to the end, the class verdict was known before
+	public boolean cancelled;
+
+	public MethodResult(SootMethod method) {
+		this.method = method;
+	}
+
+	public boolean isProved() {
+		return boundsSafe && divisionSafe;
+	}
+}
@@ -0,0 +1,238 @@
+package ch.ethz.sae;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ * Where the verification time goes. Every phase of a class and every
+ * fixpoint is a JDK Flight Recorder event, recorded when the JVM runs with
+ * -XX:StartFlightRecording. With -metrics the same numbers are kept per
+ * method and written as JSON at the end of the run, slowest fixpoints first.
+ * A server writes the classes of every request and then drops them, so the
+ * file holds the last request.
+ */
+public class Metrics {
+
+	@Name("ch.ethz.sae.Phase")
+	@Label("Verifier Phase")
+	@Category({ "SAE", "Verifier" })
+	@Description("Soot loading, bodies, Spark, summaries, or the fixpoints and checks of a tier")
+	static class Phase extends Event {
+		@Label("Class")
+		String analyzedClass;
+
+		@Label("Phase")
+		String phase;
+
+		transient long started; // for the JSON summary, not recorded
+	}
+
+	@Name("ch.ethz.sae.Fixpoint")
+	@Label("Method Fixpoint")
+	@Category({ "SAE", "Verifier" })
+	@Description("Fixpoint of one method in one domain, on the worker thread running it")
+	static class Fixpoint extends Event {
+		@Label("Method")
+		String method;
+
+		@Label("Domain")
+		String domain;
+
+		@Label("Flow Through Calls")
+		int flowThrough;
+
+		@Label("Component Iterations")
+		int iterations;
+
+		@Label("Joins")
+		int joins;
+
+		@Label("Widenings")
+		int widenings;
+
+		@Label("Meets")
+		int meets;
+
+		@Label("Assignments")
+		int assigns;
+
+		@Label("Loop Head Constraints")
+		@Description("Constraints of the largest loop head state, -1 if not measured")
+		int loopHeadConstraints;
+
+		@Label("Loop Head Generators")
+		@Description("Generators of the largest loop head state, -1 if not measured")
+		int loopHeadGenerators;
+	}
+
+	/* True if loop head sizes are wanted, computing generators is not free. */
+	static boolean measuring(VerifierOptions opts) {
+		return opts.metrics != null || EventType.getEventType(Fixpoint.class).isEnabled();
+	}
+
+	/* Emits the event of a finished fixpoint, called by the thread that ran it. */
+	static void fixpoint(Fixpoint event, MethodAnalysis<?> a) {
+		event.end();
+		if (!event.shouldCommit()) {
+			return;
+		}
+		event.method = a.methodSignature();
+		event.domain = String.valueOf(a.domain);
+		event.flowThrough = a.flowThroughCount;
+		event.iterations = a.iterationCount;
+		event.joins = a.joinCount;
+		event.widenings = a.wideningCount;
+		event.meets = a.meetCount;
+		event.assigns = a.assignCount;
+		event.loopHeadConstraints = a.headConstraints;
+		event.loopHeadGenerators = a.headGenerators;
+		event.commit();
+	}
+
+	// Counters of one fixpoint, copied so the analysis and its states can go
+	private static class MethodRow {
+		String method, domain;
+		long nanos;
+		int flowThrough, iterations, joins, widenings, meets, assigns, bounds, constraints, generators;
+	}
+
+	private static class ClassRow {
+		String analyzedClass;
+		Map<String, Long> phases = new LinkedHashMap<String, Long>();
+		List<MethodRow> methods = new ArrayList<MethodRow>();
+	}
+
+	private final List<ClassRow> classes = new ArrayList<ClassRow>();
+	private final boolean summary;
+
+	/* With summary false only the events are emitted. */
+	public Metrics(boolean summary) {
+		this.summary = summary;
+	}
+
+	/* Drops the rows of the classes written so far. */
+	public void clear() {
+		classes.clear();
+	}
+
+	public void startClass(String analyzedClass) {
+		if (summary) {
+			ClassRow row = new ClassRow();
+			row.analyzedClass = analyzedClass;
+			classes.add(row);
+		}
+	}
+
+	public Phase begin(String analyzedClass, String phase) {
+		Phase p = new Phase();
+		p.analyzedClass = analyzedClass;
+		p.phase = phase;
+		p.started = System.nanoTime();
+		p.begin();
+		return p;
+	}
+
+	public void end(Phase p) {
+		p.commit();
+		if (summary) {
+			Map<String, Long> phases = classes.get(classes.size() - 1).phases;
+			Long sum = phases.get(p.phase);
+			phases.put(p.phase, (sum == null ? 0 : sum) + System.nanoTime() - p.started);
+		}
+	}
+
+	/* Records a fixpoint after its checks ran, so the getBound calls are counted. */
+	public void method(MethodAnalysis<?> a) {
+		if (!summary) {
+			return;
+		}
+		MethodRow row = new MethodRow();
+		row.method = a.methodSignature();
+		row.domain = String.valueOf(a.domain);
+		row.nanos = a.fixpointNanos;
+		row.flowThrough = a.flowThroughCount;
+		row.iterations = a.iterationCount;
+		row.joins = a.joinCount;
+		row.widenings = a.wideningCount;
+		row.meets = a.meetCount;
+		row.assigns = a.assignCount;
+		row.bounds = a.boundCount;
+		row.constraints = a.headConstraints;
+		row.generators = a.headGenerators;
+		classes.get(classes.size() - 1).methods.add(row);
+	}
+
+	public void write(File file) throws IOException {
+		Writer w = new FileWriter(file);
+		try {
+			w.write("{\"peakRssKb\": " + NativeMemory.peakResidentKb() + ", \"classes\": [");
+			for (int c = 0; c < classes.size(); c++) {
+				ClassRow row = classes.get(c);
+				w.write(c == 0 ? "\n" : ",\n");
+				w.write("  {\"class\": " + quote(row.analyzedClass) + ", \"phasesMs\": {");
+				int p = 0;
+				for (String phase : row.phases.keySet()) {
+					w.write((p++ == 0 ? "" : ", ") + quote(phase) + ": " + millis(row.phases.get(phase)));
+				}
+				w.write("}, \"methods\": [");
+
+				List<MethodRow> methods = new ArrayList<MethodRow>(row.methods);
+				Collections.sort(methods, new Comparator<MethodRow>() {
+					@Override
+					public int compare(MethodRow a, MethodRow b) {
+						return Long.compare(b.nanos, a.nanos);
+					}
+				});
+				for (int m = 0; m < methods.size(); m++) {
+					MethodRow r = methods.get(m);
+					w.write(m == 0 ? "\n" : ",\n");
+					w.write("    {\"method\": " + quote(r.method) + ", \"domain\": " + quote(r.domain)
+							+ ", \"fixpointMs\": " + millis(r.nanos) + ", \"flowThrough\": " + r.flowThrough
+							+ ", \"iterations\": " + r.iterations + ", \"joins\": " + r.joins
+							+ ", \"widenings\": " + r.widenings + ", \"meets\": " + r.meets
+							+ ", \"assigns\": " + r.assigns + ", \"getBound\": " + r.bounds
+							+ ", \"loopHeadConstraints\": " + r.constraints
+							+ ", \"loopHeadGenerators\": " + r.generators + "}");
+				}
+				w.write(methods.isEmpty() ? "]}" : "\n  ]}");
+			}
+			w.write(classes.isEmpty() ? "]}\n" : "\n]}\n");
+		} finally {
+			w.close();
+		}
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+
+	private static String quote(String s) {
+		StringBuilder b = new StringBuilder("\"");
+		for (char ch : s.toCharArray()) {
+			if (ch == '"' || ch == '\\') {
+				b.append('\\').append(ch);
+			} else if (ch < 0x20) {
+				b.append(String.format("\\u%04x", (int) ch));
+			} else {
+				b.append(ch);
+			}
+		}
+		return b.append('"').toString();
+	}
+}
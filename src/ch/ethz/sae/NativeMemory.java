@@ -0,0 +1,67 @@
+package ch.ethz.sae;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+/*
+ * Memory of the process outside the Java heap. APRON elements are native and
+ * only freed when their Java wrappers are finalised, and the collector does
+ * not hurry for memory it cannot see, so the verifier collects on its own
+ * once too much of it is in use. Read from /proc/self/status, so only known
+ * on Linux; elsewhere every size is -1.
+ */
+public class NativeMemory {
+
+	/* Resident set size in KB. */
+	public static long residentKb() {
+		return status("VmRSS:");
+	}
+
+	/* Largest resident set size of the process so far in KB. */
+	public static long peakResidentKb() {
+		return status("VmHWM:");
+	}
+
+	/*
+	 * Collects and finalises unreachable elements if the resident memory not
+	 * taken by the Java heap is over the limit. Returns true if it collected.
+	 */
+	public static boolean collectIfOver(long limitKb) {
+		long rss = residentKb();
+		if (limitKb <= 0 || rss < 0) {
+			return false;
+		}
+		Runtime rt = Runtime.getRuntime();
+		long heapKb = rt.totalMemory() / 1024;
+		if (rss - heapKb <= limitKb) {
+			return false;
+		}
+		System.gc();
+		System.runFinalization();
+		return true;
+	}
+
+	private static long status(String field) {
+		BufferedReader in = null;
+		try {
+			in = new BufferedReader(new FileReader("/proc/self/status"));
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				if (line.startsWith(field)) {
+					// e.g. "VmRSS:	  123456 kB"
+					return Long.parseLong(line.substring(field.length()).replace("kB", "").trim());
+				}
+			}
+		} catch (IOException e) {
+		} catch (NumberFormatException e) {
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,136 @@
+package ch.ethz.sae;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import soot.Body;
+import soot.Local;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.jimple.DefinitionStmt;
+import soot.jimple.IfStmt;
+import soot.jimple.internal.AbstractBinopExpr;
+
+/*
+ * Partition of the integer variables of a method into packs. Variables that
+ * appear together in an assignment or a guard end up in the same pack, every
+ * pack is analysed in its own (small) APRON element.
+ */
+public class Packing {
+
+	private final HashMap<String, Integer> packOf = new HashMap<String, Integer>();
+	private final String[][] packs;
+
+	private Packing(List<List<String>> groups) {
+		// constraints between constants only still need an element to go to
+		if (groups.isEmpty()) {
+			groups.add(new ArrayList<String>());
+		}
+		packs = new String[groups.size()][];
+		for (int i = 0; i < packs.length; i++) {
+			packs[i] = groups.get(i).toArray(new String[0]);
+			for (String var : packs[i]) {
+				packOf.put(var, i);
+			}
+		}
+	}
+
+	/* One pack holding all variables, i.e. no packing at all. */
+	public static Packing single(String[] vars) {
+		List<String> all = new ArrayList<String>();
+		for (String var : vars) {
+			all.add(var);
+		}
+		List<List<String>> groups = new ArrayList<List<String>>();
+		groups.add(all);
+		return new Packing(groups);
+	}
+
+	/* Groups the variables of the body by the statements they share. */
+	public static Packing compute(Body body, String[] vars) {
+		HashMap<String, String> parent = new HashMap<String, String>();
+		for (String var : vars) {
+			parent.put(var, var);
+		}
+
+		for (Unit u : body.getUnits()) {
+			if (u instanceof DefinitionStmt) {
+				Value left = ((DefinitionStmt) u).getLeftOp();
+				if (left instanceof Local) {
+					for (ValueBox b : ((DefinitionStmt) u).getRightOp().getUseBoxes()) {
+						union(parent, ((Local) left).getName(), b.getValue());
+					}
+					union(parent, ((Local) left).getName(), ((DefinitionStmt) u).getRightOp());
+				}
+			} else if (u instanceof IfStmt) {
+				Value condition = ((IfStmt) u).getCondition();
+				if (condition instanceof AbstractBinopExpr) {
+					Value op1 = ((AbstractBinopExpr) condition).getOp1();
+					Value op2 = ((AbstractBinopExpr) condition).getOp2();
+					if (op1 instanceof Local) {
+						union(parent, ((Local) op1).getName(), op2);
+					}
+				}
+			}
+		}
+
+		// Packs are ordered by their first variable, so the layout is stable
+		LinkedHashMap<String, List<String>> groups = new LinkedHashMap<String, List<String>>();
+		for (String var : vars) {
+			String root = find(parent, var);
+			List<String> group = groups.get(root);
+			if (group == null) {
+				group = new ArrayList<String>();
+				groups.put(root, group);
+			}
+			group.add(var);
+		}
+		return new Packing(new ArrayList<List<String>>(groups.values()));
+	}
+
+	private static void union(HashMap<String, String> parent, String var, Value other) {
+		if (!(other instanceof Local) || !parent.containsKey(var)) {
+			return;
+		}
+		String name = ((Local) other).getName();
+		if (!parent.containsKey(name)) {
+			return;
+		}
+		String a = find(parent, var);
+		String b = find(parent, name);
+		if (!a.equals(b)) {
+			parent.put(a, b);
+		}
+	}
+
+	private static String find(HashMap<String, String> parent, String var) {
+		String root = var;
+		while (!parent.get(root).equals(root)) {
+			root = parent.get(root);
+		}
+		// path compression
+		while (!var.equals(root)) {
+			String next = parent.get(var);
+			parent.put(var, root);
+			var = next;
+		}
+		return root;
+	}
+
+	/* Returns the pack of the variable, or -1 if it is not tracked. */
+	public int packOf(String var) {
+		Integer pack = packOf.get(var);
+		return pack == null ? -1 : pack;
+	}
+
+	public int size() {
+		return packs.length;
+	}
+
+	public String[] vars(int pack) {
+		return packs[pack];
+	}
+}
@@ -0,0 +1,52 @@
+package ch.ethz.sae;
+
+/*
+ * Values an int may have before a statement, as the checkers see them. The
+ * bounds are longs, NEG_INF and POS_INF stand for the infinities, and a
+ * range with lo > hi is empty. Plain Java, so checking the results of the
+ * interval tier needs no APRON.
+ */
+public final class Range {
+
+	public static final long NEG_INF = Long.MIN_VALUE;
+	public static final long POS_INF = Long.MAX_VALUE;
+
+	public static final Range TOP = new Range(NEG_INF, POS_INF);
+
+	public final long lo;
+	public final long hi;
+
+	public Range(long lo, long hi) {
+		this.lo = lo;
+		this.hi = hi;
+	}
+
+	public boolean isEmpty() {
+		return lo > hi;
+	}
+
+	public boolean contains(long v) {
+		return lo <= v && v <= hi;
+	}
+
+	/* True if every value of the other range is in this one. */
+	public boolean contains(Range r) {
+		return r.isEmpty() || (lo <= r.lo && r.hi <= hi);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof Range && ((Range) o).lo == lo && ((Range) o).hi == hi;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (lo ^ (lo >>> 32)) * 31 + (int) (hi ^ (hi >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return "[" + (lo == NEG_INF ? "-oo" : String.valueOf(lo)) + ","
+				+ (hi == POS_INF ? "+oo" : String.valueOf(hi)) + "]";
+	}
+}
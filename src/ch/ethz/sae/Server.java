@@ -0,0 +1,144 @@
+package ch.ethz.sae;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import soot.G;
+import soot.Scene;
+
+/*
+ * Keeps Soot and APRON loaded between verifications, for callers that need
+ * an answer faster than a JVM starts. Listens on a port of 127.0.0.1; every
+ * line a client sends names classes or class files, and the verdict lines of
+ * each class are sent back as soon as it is verified, followed by END.
+ *
+ * Connections are served by a thread pool, but Soot has one global Scene, so
+ * verifications run one at a time; the methods of a class still run in
+ * parallel. Before a request, the class files of the classes verified so far
+ * are compared with the ones they were loaded from, and Soot is reset if one
+ * of them changed.
+ */
+public class Server {
+
+	public static final String END = "END";
+
+	private final ServerSocket socket;
+	private final BodyCache bodyCache; // null if not used
+	private final ExecutorService connections = Executors.newCachedThreadPool();
+	private final Object soot = new Object(); // held while Soot is in use
+
+	// hash of the class file every verified class was loaded from
+	private final HashMap<String, String> loaded = new HashMap<String, String>();
+
+	public Server(int port, BodyCache bodyCache) throws IOException {
+		this.socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.bodyCache = bodyCache;
+	}
+
+	public void serve() throws IOException {
+		System.err.println("Serving on " + socket.getLocalSocketAddress());
+		while (true) {
+			final Socket client = socket.accept();
+			connections.execute(new Runnable() {
+				@Override
+				public void run() {
+					handle(client);
+				}
+			});
+		}
+	}
+
+	private void handle(Socket client) {
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), "UTF-8"));
+			PrintStream out = new PrintStream(client.getOutputStream(), true, "UTF-8");
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				synchronized (soot) {
+					resetIfChanged();
+					List<String> classes = new ArrayList<String>();
+					for (String arg : line.trim().split("\\s+")) {
+						if (arg.isEmpty()) {
+							continue;
+						}
+						String name = arg.endsWith(".class") ? classOf(arg) : arg;
+						if (name == null) {
+							out.println(arg + " ERROR not on the class path");
+						} else {
+							classes.add(name);
+						}
+					}
+					for (String c : classes) {
+						String hash = BodyCache.classFileHash(c);
+						if (hash == null) {
+							out.println(c + " ERROR no class file");
+							continue;
+						}
+						if (bodyCache != null) {
+							bodyCache.include(c);
+						}
+						// hashed before loading, a change during the request shows up next time
+						loaded.put(c, hash);
+						Verifier.verify(c, out);
+					}
+					Verifier.save();
+				}
+				out.println(END);
+			}
+		} catch (IOException e) {
+			System.err.println("Request failed: " + e.getMessage());
+		} finally {
+			try {
+				client.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/* Starts over with a new Scene if a verified class was recompiled since it was loaded. */
+	private void resetIfChanged() {
+		boolean changed = false;
+		for (String c : loaded.keySet()) {
+			String hash = BodyCache.classFileHash(c);
+			if (hash == null || !hash.equals(loaded.get(c))) {
+				changed = true;
+				break;
+			}
+		}
+		if (!changed) {
+			return;
+		}
+		// -batch directories are on the Soot class path only
+		String classPath = Scene.v().getSootClassPath();
+		G.reset();
+		Scene.v().setSootClassPath(classPath);
+		loaded.clear();
+		if (bodyCache != null) {
+			bodyCache.reset();
+			bodyCache.install();
+		}
+	}
+
+	/* Name of the class in a class file under a directory of the class path, null if there is none. */
+	private static String classOf(String path) {
+		String file = new File(path).getAbsolutePath();
+		for (String entry : Scene.v().getSootClassPath().split(File.pathSeparator)) {
+			String dir = new File(entry).getAbsolutePath() + File.separator;
+			if (new File(entry).isDirectory() && file.startsWith(dir)) {
+				String name = file.substring(dir.length(), file.length() - ".class".length());
+				return name.replace(File.separatorChar, '.');
+			}
+		}
+		return null;
+	}
+}
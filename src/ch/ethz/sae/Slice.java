@@ -0,0 +1,194 @@
+package ch.ethz.sae;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import soot.IntegerType;
+import soot.Local;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.jimple.DefinitionStmt;
+import soot.jimple.IfStmt;
+import soot.toolkits.graph.UnitGraph;
+
+/*
+ * Backward slice of a method with respect to the values its check sites look
+ * at (sendJob arguments, PrinterArray sizes, divisors). Only the variables
+ * and statements in the slice can influence the verdicts of the method.
+ */
+public class Slice {
+
+	private final Set<String> vars = new HashSet<String>();
+	private final Set<Unit> units = new HashSet<Unit>();
+
+	private final HashMap<String, List<Unit>> defs = new HashMap<String, List<Unit>>();
+	private final HashMap<Unit, List<Unit>> controllers;
+	private final LinkedList<Unit> worklist = new LinkedList<Unit>();
+
+	private Slice(UnitGraph g) {
+		this.controllers = controlDependences(g);
+
+		for (Unit u : g.getBody().getUnits()) {
+			if (u instanceof DefinitionStmt && ((DefinitionStmt) u).getLeftOp() instanceof Local) {
+				String name = ((Local) ((DefinitionStmt) u).getLeftOp()).getName();
+				List<Unit> d = defs.get(name);
+				if (d == null) {
+					d = new ArrayList<Unit>();
+					defs.put(name, d);
+				}
+				d.add(u);
+			}
+		}
+	}
+
+	public static Slice compute(UnitGraph g, CheckSiteIndex index) {
+		Slice slice = new Slice(g);
+
+		// The check itself does not change the state, only what it is control dependent on matters
+		for (int i = 0; i < index.size(); i++) {
+			slice.worklist.add(index.site(i));
+			for (Value v : index.checkedValues(i)) {
+				slice.addVar(v);
+			}
+		}
+
+		while (!slice.worklist.isEmpty()) {
+			Unit u = slice.worklist.removeFirst();
+			List<Unit> cs = slice.controllers.get(u);
+			if (cs != null) {
+				for (Unit c : cs) {
+					slice.addUnit(c);
+				}
+			}
+		}
+		return slice;
+	}
+
+	private void addVar(Value v) {
+		if (!(v instanceof Local) || !(v.getType() instanceof IntegerType)) {
+			return;
+		}
+		String name = ((Local) v).getName();
+		if (!vars.add(name)) {
+			return;
+		}
+		List<Unit> d = defs.get(name);
+		if (d != null) {
+			for (Unit u : d) {
+				addUnit(u);
+			}
+		}
+	}
+
+	private void addUnit(Unit u) {
+		if (!units.add(u)) {
+			return;
+		}
+		worklist.add(u);
+		if (u instanceof DefinitionStmt) {
+			for (ValueBox b : ((DefinitionStmt) u).getRightOp().getUseBoxes()) {
+				addVar(b.getValue());
+			}
+			addVar(((DefinitionStmt) u).getRightOp());
+		} else if (u instanceof IfStmt) {
+			for (ValueBox b : ((IfStmt) u).getCondition().getUseBoxes()) {
+				addVar(b.getValue());
+			}
+		}
+	}
+
+	/*
+	 * Maps every unit to the branches it is control dependent on: u depends on
+	 * b if u post-dominates a successor of b but does not strictly
+	 * post-dominate b.
+	 */
+	private static HashMap<Unit, List<Unit>> controlDependences(UnitGraph g) {
+		List<Unit> order = new ArrayList<Unit>(g.getBody().getUnits());
+		HashMap<Unit, Integer> index = new HashMap<Unit, Integer>();
+		for (int i = 0; i < order.size(); i++) {
+			index.put(order.get(i), i);
+		}
+		int n = order.size();
+
+		BitSet[] pdom = new BitSet[n];
+		for (int i = 0; i < n; i++) {
+			pdom[i] = new BitSet(n);
+			if (g.getSuccsOf(order.get(i)).isEmpty()) {
+				pdom[i].set(i);
+			} else {
+				pdom[i].set(0, n);
+			}
+		}
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = n - 1; i >= 0; i--) {
+				List<Unit> succs = g.getSuccsOf(order.get(i));
+				if (succs.isEmpty()) {
+					continue;
+				}
+				BitSet next = new BitSet(n);
+				next.set(0, n);
+				for (Unit s : succs) {
+					next.and(pdom[index.get(s)]);
+				}
+				next.set(i);
+				if (!next.equals(pdom[i])) {
+					pdom[i] = next;
+					changed = true;
+				}
+			}
+		}
+
+		// The immediate post-dominator has the largest post-dominator set
+		int[] ipdom = new int[n];
+		for (int i = 0; i < n; i++) {
+			ipdom[i] = -1;
+			int best = -1;
+			for (int d = pdom[i].nextSetBit(0); d >= 0; d = pdom[i].nextSetBit(d + 1)) {
+				if (d != i && pdom[d].cardinality() > best) {
+					best = pdom[d].cardinality();
+					ipdom[i] = d;
+				}
+			}
+		}
+
+		HashMap<Unit, List<Unit>> controllers = new HashMap<Unit, List<Unit>>();
+		for (int b = 0; b < n; b++) {
+			List<Unit> succs = g.getSuccsOf(order.get(b));
+			if (succs.size() < 2) {
+				continue;
+			}
+			for (Unit s : succs) {
+				BitSet seen = new BitSet(n);
+				int x = index.get(s);
+				while (x >= 0 && x != ipdom[b] && !seen.get(x)) {
+					seen.set(x);
+					List<Unit> cs = controllers.get(order.get(x));
+					if (cs == null) {
+						cs = new ArrayList<Unit>();
+						controllers.put(order.get(x), cs);
+					}
+					cs.add(order.get(b));
+					x = ipdom[x];
+				}
+			}
+		}
+		return controllers;
+	}
+
+	public boolean contains(Unit u) {
+		return units.contains(u);
+	}
+
+	public boolean containsVar(String var) {
+		return vars.contains(var);
+	}
+}
@@ -0,0 +1,267 @@
+package ch.ethz.sae;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import apron.ApronException;
+import apron.Environment;
+import apron.Lincons1;
+import apron.Linexpr1;
+import apron.Linterm1;
+import soot.IntegerType;
+import soot.Scene;
+import soot.SootMethod;
+import soot.jimple.toolkits.callgraph.Edge;
+import soot.toolkits.graph.BriefUnitGraph;
+
+/*
+ * Relational summaries of the int returning methods reachable from the
+ * analysed class. A summary is a conjunction of linear constraints between the
+ * arguments (arg$i) and the result (res$) of a call. Methods are summarised
+ * bottom-up over the strongly connected components of the call graph, so
+ * every callee is analysed once; recursive methods get no summary.
+ */
+public class Summaries {
+
+	// names used inside the analysis of the callee
+	static final String RET = "ret$";
+
+	static String param(int i) {
+		return "p$" + i;
+	}
+
+	// names used at the call sites
+	static final String RESULT = "res$";
+
+	static final String ARG_PREFIX = "arg$";
+
+	private final HashMap<SootMethod, Lincons1[]> summaries = new HashMap<SootMethod, Lincons1[]>();
+
+	// Tarjan's algorithm state
+	private final HashMap<SootMethod, Integer> index = new HashMap<SootMethod, Integer>();
+	private final HashMap<SootMethod, Integer> lowlink = new HashMap<SootMethod, Integer>();
+	private final List<SootMethod> stack = new ArrayList<SootMethod>();
+	private final List<List<SootMethod>> components = new ArrayList<List<SootMethod>>();
+
+	private Summaries() {
+	}
+
+	/* Returns the summary of the method, or null if calls to it must be forgotten. */
+	public Lincons1[] get(SootMethod m) {
+		return summaries.get(m);
+	}
+
+	/*
+	 * Summarises the methods reachable from the entry points. Components whose
+	 * callees are all summarised are independent and analysed in parallel.
+	 * Methods over the budget get no summary.
+	 */
+	public static Summaries compute(Collection<SootMethod> entries, Domain domain, Budget budget,
+			ForkJoinPool pool) {
+		Summaries s = new Summaries();
+		for (SootMethod m : entries) {
+			if (isAnalysable(m) && !s.index.containsKey(m)) {
+				s.strongConnect(m);
+			}
+		}
+
+		// Components come out callees first, a level only depends on lower ones
+		HashMap<SootMethod, Integer> levelOf = new HashMap<SootMethod, Integer>();
+		List<List<SootMethod>> levels = new ArrayList<List<SootMethod>>();
+		for (List<SootMethod> component : s.components) {
+			int level = 0;
+			boolean recursive = component.size() > 1;
+			for (SootMethod m : component) {
+				for (SootMethod callee : callees(m)) {
+					if (component.contains(callee)) {
+						recursive = true;
+					} else if (levelOf.containsKey(callee)) {
+						level = Math.max(level, levelOf.get(callee) + 1);
+					}
+				}
+			}
+			for (SootMethod m : component) {
+				levelOf.put(m, level);
+			}
+			if (recursive || !returnsInt(component.get(0))) {
+				continue;
+			}
+			while (levels.size() <= level) {
+				levels.add(new ArrayList<SootMethod>());
+			}
+			levels.get(level).add(component.get(0));
+		}
+
+		for (List<SootMethod> level : levels) {
+			// Soot is not thread safe, so all bodies and graphs are built up front
+			List<AnalysisTask<Analysis>> tasks = new ArrayList<AnalysisTask<Analysis>>(level.size());
+			for (SootMethod m : level) {
+				Analysis analysis = Analysis.forSummary(
+						new BriefUnitGraph(m.retrieveActiveBody()), m.getDeclaringClass(), domain, s);
+				analysis.budget = budget;
+				tasks.add(new AnalysisTask<Analysis>(analysis));
+			}
+			for (AnalysisTask<Analysis> task : tasks) {
+				pool.execute(task);
+			}
+			for (int i = 0; i < level.size(); i++) {
+				try {
+					Analysis analysis = tasks.get(i).join();
+					Lincons1[] summary = analysis.summary();
+					analysis.release();
+					if (summary != null) {
+						s.summaries.put(level.get(i), toCallSite(summary));
+					}
+				} catch (ApronException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return s;
+	}
+
+	/*
+	 * Names what the summary of a call target depends on: the Jimple and the
+	 * call graph edges of every method reachable from it. Keys the verdict
+	 * cache without computing any summary; memo is kept for one class.
+	 */
+	static String dependencies(SootMethod m, HashMap<SootMethod, String> memo) {
+		String d = memo.get(m);
+		if (d != null) {
+			return d;
+		}
+		if (!isAnalysable(m)) {
+			d = "-";
+		} else {
+			List<SootMethod> reached = new ArrayList<SootMethod>();
+			reached.add(m);
+			for (int i = 0; i < reached.size(); i++) {
+				for (SootMethod callee : callees(reached.get(i))) {
+					if (!reached.contains(callee)) {
+						reached.add(callee);
+					}
+				}
+			}
+			// in signature order, the call graph does not list edges in a fixed one
+			List<String> methods = new ArrayList<String>();
+			for (SootMethod r : reached) {
+				List<String> targets = new ArrayList<String>();
+				for (SootMethod callee : callees(r)) {
+					targets.add(callee.getSignature());
+				}
+				Collections.sort(targets);
+				methods.add(r.getSignature() + targets + "\n" + r.retrieveActiveBody());
+			}
+			Collections.sort(methods);
+			d = digest(methods.toString());
+		}
+		memo.put(m, d);
+		return d;
+	}
+
+	private static String digest(String s) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			return new BigInteger(1, md.digest(s.getBytes("UTF-8"))).toString(16);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void strongConnect(SootMethod m) {
+		int n = index.size();
+		index.put(m, n);
+		lowlink.put(m, n);
+		stack.add(m);
+
+		for (SootMethod callee : callees(m)) {
+			if (!index.containsKey(callee)) {
+				strongConnect(callee);
+				lowlink.put(m, Math.min(lowlink.get(m), lowlink.get(callee)));
+			} else if (stack.contains(callee)) {
+				lowlink.put(m, Math.min(lowlink.get(m), index.get(callee)));
+			}
+		}
+
+		if (lowlink.get(m).equals(index.get(m))) {
+			List<SootMethod> component = new ArrayList<SootMethod>();
+			SootMethod top;
+			do {
+				top = stack.remove(stack.size() - 1);
+				component.add(top);
+			} while (top != m);
+			components.add(component);
+		}
+	}
+
+	private static List<SootMethod> callees(SootMethod m) {
+		List<SootMethod> callees = new ArrayList<SootMethod>();
+		Iterator<Edge> edges = Scene.v().getCallGraph().edgesOutOf(m);
+		while (edges.hasNext()) {
+			SootMethod callee = edges.next().tgt();
+			if (isAnalysable(callee) && !callees.contains(callee)) {
+				callees.add(callee);
+			}
+		}
+		return callees;
+	}
+
+	private static boolean isAnalysable(SootMethod m) {
+		return m.isConcrete() && m.getDeclaringClass().isApplicationClass();
+	}
+
+	private static boolean returnsInt(SootMethod m) {
+		return m.getReturnType() instanceof IntegerType;
+	}
+
+	/* Renames the parameters and the return value to the names used at call sites. */
+	private static Lincons1[] toCallSite(Lincons1[] summary) {
+		if (summary.length == 0) {
+			return summary;
+		}
+		String[] vars = summary[0].getEnvironment().getIntVars();
+		String[] renamed = new String[vars.length];
+		for (int i = 0; i < vars.length; i++) {
+			renamed[i] = rename(vars[i]);
+		}
+		Environment env = new Environment(renamed, new String[0]);
+
+		Lincons1[] out = new Lincons1[summary.length];
+		for (int i = 0; i < summary.length; i++) {
+			Linterm1[] terms = summary[i].getLinterms();
+			Linterm1[] renamedTerms = new Linterm1[terms.length];
+			for (int j = 0; j < terms.length; j++) {
+				renamedTerms[j] = new Linterm1(rename(terms[j].getVariable()), terms[j].getCoefficient());
+			}
+			out[i] = new Lincons1(summary[i].getKind(),
+					new Linexpr1(env, renamedTerms, summary[i].getCst()));
+		}
+		return out;
+	}
+
+	private static String rename(String var) {
+		if (var.equals(RET)) {
+			return RESULT;
+		}
+		return ARG_PREFIX + var.substring("p$".length());
+	}
+
+	/* Index of the argument a call site variable stands for, -1 for the result. */
+	static int argIndex(String var) {
+		if (!var.startsWith(ARG_PREFIX)) {
+			return -1;
+		}
+		return Integer.parseInt(var.substring(ARG_PREFIX.length()));
+	}
+}
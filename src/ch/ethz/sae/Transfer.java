@@ -0,0 +1,142 @@
+package ch.ethz.sae;
+
+import apron.Abstract1;
+import apron.ApronException;
+import apron.Lincons1;
+import apron.Linexpr1;
+import apron.Tcons1;
+import apron.Texpr1Intern;
+import soot.jimple.InvokeExpr;
+
+/*
+ * Transfer function of one statement. Analysis compiles one per unit before
+ * the fixpoint, so applying it only runs the APRON operation on expressions
+ * and constraints that were built once.
+ */
+public abstract class Transfer {
+
+	/* Returns the fall through and the branch state, the input itself where nothing changes. */
+	abstract Abstract1[][] apply(Analysis a, Abstract1[] in) throws ApronException;
+
+	/* Statements that do not change the tracked variables. */
+	static final Transfer IDENTITY = new Transfer() {
+		@Override
+		Abstract1[][] apply(Analysis a, Abstract1[] in) {
+			return new Abstract1[][] { in, in };
+		}
+	};
+
+	/* var = expr, within the pack of var. */
+	static class Assign extends Transfer {
+		private final int pack;
+		private final String var;
+		private final Texpr1Intern expr;
+
+		Assign(int pack, String var, Texpr1Intern expr) {
+			this.pack = pack;
+			this.var = var;
+			this.expr = expr;
+		}
+
+		@Override
+		Abstract1[][] apply(Analysis a, Abstract1[] in) throws ApronException {
+			a.assignCount++;
+			Abstract1[] out = in.clone();
+			out[pack] = in[pack].assignCopy(a.man, var, expr, null);
+			return new Abstract1[][] { out, out };
+		}
+	}
+
+	/* var = expr for affine expr, APRON does not have to linearise it. */
+	static class LinearAssign extends Transfer {
+		private final int pack;
+		private final String var;
+		private final Linexpr1 expr;
+
+		LinearAssign(int pack, String var, Linexpr1 expr) {
+			this.pack = pack;
+			this.var = var;
+			this.expr = expr;
+		}
+
+		@Override
+		Abstract1[][] apply(Analysis a, Abstract1[] in) throws ApronException {
+			a.assignCount++;
+			Abstract1[] out = in.clone();
+			out[pack] = in[pack].assignCopy(a.man, var, expr, null);
+			return new Abstract1[][] { out, out };
+		}
+	}
+
+	/* var = anything. */
+	static class Forget extends Transfer {
+		private final int pack;
+		private final String var;
+
+		Forget(int pack, String var) {
+			this.pack = pack;
+			this.var = var;
+		}
+
+		@Override
+		Abstract1[][] apply(Analysis a, Abstract1[] in) throws ApronException {
+			Abstract1[] out = in.clone();
+			out[pack] = in[pack].forgetCopy(a.man, var, false);
+			return new Abstract1[][] { out, out };
+		}
+	}
+
+	/* if: the fall through state meets the negated condition, the branch the condition. */
+	static class Guard extends Transfer {
+		private final int pack;
+		private final Tcons1 fall, branch;
+
+		Guard(int pack, Tcons1 fall, Tcons1 branch) {
+			this.pack = pack;
+			this.fall = fall;
+			this.branch = branch;
+		}
+
+		@Override
+		Abstract1[][] apply(Analysis a, Abstract1[] in) throws ApronException {
+			return new Abstract1[][] { a.meet(in, pack, fall), a.meet(in, pack, branch) };
+		}
+	}
+
+	/* if with an affine condition. */
+	static class LinearGuard extends Transfer {
+		private final int pack;
+		private final Lincons1 fall, branch;
+
+		LinearGuard(int pack, Lincons1 fall, Lincons1 branch) {
+			this.pack = pack;
+			this.fall = fall;
+			this.branch = branch;
+		}
+
+		@Override
+		Abstract1[][] apply(Analysis a, Abstract1[] in) throws ApronException {
+			return new Abstract1[][] { a.meet(in, pack, fall), a.meet(in, pack, branch) };
+		}
+	}
+
+	/* var = call, with a summary of the callee. */
+	static class Call extends Transfer {
+		private final String var;
+		private final InvokeExpr call;
+		private final Lincons1[] summary;
+
+		Call(String var, InvokeExpr call, Lincons1[] summary) {
+			this.var = var;
+			this.call = call;
+			this.summary = summary;
+		}
+
+		@Override
+		Abstract1[][] apply(Analysis a, Abstract1[] in) throws ApronException {
+			Abstract1[] out = in.clone();
+			a.applySummary(out, var, call, summary);
+			return new Abstract1[][] { out, out };
+		}
+	}
+}
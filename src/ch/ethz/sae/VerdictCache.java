@@ -0,0 +1,164 @@
+package ch.ethz.sae;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import soot.Body;
+
+/*
+ * Persistent cache of per-method verdicts. A key is a hash of the Jimple body,
+ * the PrinterArray allocation sites its sendJob receivers may point to and
+ * the analyzer configuration, so a method is only re-analysed if one of them
+ * changed.
+ *
+ * File format (big endian): magic, version, entry count, then per entry the
+ * 16 byte key, a flag byte (1 = bounds safe, 2 = division safe) and the
+ * ordinal of the domain that produced the verdict (-1 if none).
+ */
+public class VerdictCache {
+
+	private static final int MAGIC = 0x53414556; // "SAEV"
+	private static final int VERSION = 2;
+
+	private static final String FILE_NAME = "verdicts.bin";
+
+	private final File file;
+	private final HashMap<Key, byte[]> entries = new HashMap<Key, byte[]>();
+	private boolean dirty = false;
+
+	public VerdictCache(File dir) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("can't create cache directory " + dir);
+		}
+		file = new File(dir, FILE_NAME);
+		if (file.exists()) {
+			load();
+		}
+	}
+
+	public static Key key(Body body, String allocationContext, String config) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			md.update(body.toString().getBytes("UTF-8"));
+			md.update((byte) 0);
+			md.update(allocationContext.getBytes("UTF-8"));
+			md.update((byte) 0);
+			md.update(config.getBytes("UTF-8"));
+			byte[] d = md.digest();
+			return new Key(toLong(d, 0), toLong(d, 8));
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/* Fills in the result if the key is known, returns false otherwise. */
+	public boolean lookup(Key key, MethodResult r) {
+		byte[] value = entries.get(key);
+		if (value == null) {
+			return false;
+		}
+		r.boundsSafe = (value[0] & 1) != 0;
+		r.divisionSafe = (value[0] & 2) != 0;
+		r.domain = value[1] < 0 ? null : Domain.values()[value[1]];
+		return true;
+	}
+
+	public void store(Key key, MethodResult r) {
+		byte flags = (byte) ((r.boundsSafe ? 1 : 0) | (r.divisionSafe ? 2 : 0));
+		byte domain = (byte) (r.domain == null ? -1 : r.domain.ordinal());
+		entries.put(key, new byte[] { flags, domain });
+		dirty = true;
+	}
+
+	private void load() throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				// stale format, start over
+				return;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				Key key = new Key(in.readLong(), in.readLong());
+				byte flags = in.readByte();
+				byte domain = in.readByte();
+				entries.put(key, new byte[] { flags, domain });
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/* Writes the cache, the old file is only replaced once the new one is complete. */
+	public void save() throws IOException {
+		if (!dirty) {
+			return;
+		}
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+			for (Map.Entry<Key, byte[]> e : entries.entrySet()) {
+				out.writeLong(e.getKey().hi);
+				out.writeLong(e.getKey().lo);
+				out.writeByte(e.getValue()[0]);
+				out.writeByte(e.getValue()[1]);
+			}
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(file)) {
+			file.delete();
+			if (!tmp.renameTo(file)) {
+				throw new IOException("can't replace " + file);
+			}
+		}
+		dirty = false;
+	}
+
+	private static long toLong(byte[] b, int offset) {
+		long v = 0;
+		for (int i = 0; i < 8; i++) {
+			v = (v << 8) | (b[offset + i] & 0xff);
+		}
+		return v;
+	}
+
+	public static final class Key {
+		final long hi, lo;
+
+		Key(long hi, long lo) {
+			this.hi = hi;
+			this.lo = lo;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return hi == k.hi && lo == k.lo;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (hi ^ (hi >>> 32));
+		}
+	}
+}
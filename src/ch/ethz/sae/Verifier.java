@@ -1,194 +1,542 @@
 package ch.ethz.sae;
 
+import java.io.IOException;
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
-import apron.ApronException;
-import apron.Interval;
-import apron.Texpr1Intern;
-import apron.Texpr1Node;
-import apron.Texpr1VarNode;
-import soot.Unit;
-import soot.jimple.IntConstant;
-import soot.jimple.internal.JDivExpr;
-import soot.jimple.internal.JInvokeStmt;
-import soot.jimple.internal.JSpecialInvokeExpr;
-import soot.jimple.internal.JVirtualInvokeExpr;
-import soot.jimple.internal.JimpleLocal;
-import soot.jimple.spark.sets.DoublePointsToSet;
-import soot.jimple.spark.sets.P2SetVisitor;
+import soot.jimple.Stmt;
 import soot.jimple.spark.SparkTransformer;
-import soot.jimple.spark.pag.Node;
 import soot.jimple.spark.pag.PAG;
-import soot.Local;
+import soot.Body;
 import soot.Scene;
 import soot.SootClass;
 import soot.SootMethod;
-import soot.Value;
-import soot.ValueBox;
+import soot.Unit;
 import soot.toolkits.graph.BriefUnitGraph;
+import soot.toolkits.graph.UnitGraph;
 
 public class Verifier {
 	
 	public static void main(String[] args) {
-		if (args.length != 1) {
-			System.err.println("Usage: java -classpath soot-2.5.0.jar:./bin ch.ethz.sae.Verifier <class to test>");
+		try {
+			opts = VerifierOptions.parse(args);
+		} catch (IOException e) {
+			System.err.println("Can't read batch source: " + e.getMessage());
 			System.exit(-1);
 		}
-		String analyzedClass = args[0];
+		if (opts == null) {
+			System.err.println(VerifierOptions.USAGE);
+			System.exit(-1);
+		}
+
+		pool = new ForkJoinPool(opts.threads);
+		metrics = new Metrics(opts.metrics != null);
+
+		if (opts.cache != null) {
+			try {
+				cache = new VerdictCache(opts.cache);
+			} catch (IOException e) {
+				System.err.println("Can't read verdict cache: " + e.getMessage());
+				System.exit(-1);
+			}
+		}
+		if (opts.jimpleCache != null) {
+			try {
+				bodyCache = new BodyCache(opts.jimpleCache, opts.classes);
+			} catch (IOException e) {
+				System.err.println("Can't open Jimple cache: " + e.getMessage());
+				System.exit(-1);
+			}
+			bodyCache.install();
+		}
+
+		if (opts.port != 0) {
+			try {
+				new Server(opts.port, bodyCache).serve();
+			} catch (IOException e) {
+				System.err.println("Can't serve on port " + opts.port + ": " + e.getMessage());
+				System.exit(-1);
+			}
+		}
+
+		// All classes share one Soot Scene and one APRON runtime
+		for (String analyzedClass : opts.classes) {
+			verify(analyzedClass, System.out);
+		}
+		pool.shutdown();
+		save();
+
+		long peak = NativeMemory.peakResidentKb();
+		if (peak >= 0) {
+			System.err.println("Peak resident memory: " + peak / 1024 + " MB");
+		}
+	}
+
+	/* Verifies a class and prints its verdicts to out, a failure is reported on stderr. */
+	static void verify(String analyzedClass, PrintStream out) {
+		try {
+			verifyClass(analyzedClass, out);
+		} catch (RuntimeException e) {
+			System.err.println("Verification of " + analyzedClass + " failed: " + e);
+		}
+	}
+
+	/* Writes the verdict cache and the metrics, if they are used. */
+	static void save() {
+		if (cache != null) {
+			try {
+				cache.save();
+			} catch (IOException e) {
+				System.err.println("Can't write verdict cache: " + e.getMessage());
+			}
+		}
+
+		if (opts.metrics != null) {
+			try {
+				metrics.write(opts.metrics);
+			} catch (IOException e) {
+				System.err.println("Can't write metrics: " + e.getMessage());
+			}
+			// a server saves after every request, its rows would pile up
+			metrics.clear();
+		}
+	}
+
+	private static VerifierOptions opts;
+
+	// verdicts of earlier runs, null if caching is off
+	private static VerdictCache cache;
+
+	// Jimple of the analysed classes from earlier runs, null if not used
+	private static BodyCache bodyCache;
+
+	// Runs the per-method fixpoints, each analysis is confined to one worker
+	private static ForkJoinPool pool;
+
+	// Phase and fixpoint events, and the -metrics summary
+	private static Metrics metrics;
+
+	private static void verifyClass(String analyzedClass, PrintStream out) {
+		metrics.startClass(analyzedClass);
+		Metrics.Phase phase = metrics.begin(analyzedClass, "load");
 		SootClass c = loadClass(analyzedClass);
+		metrics.end(phase);
 
-		PAG pointsToAnalysis = doPointsToAnalysis(c);
+		// Bodies and graphs are built once and shared by all checks and tiers
+		phase = metrics.begin(analyzedClass, "bodies");
+		HashMap<SootMethod, Body> bodies = new HashMap<SootMethod, Body>();
+		HashMap<SootMethod, UnitGraph> graphs = new HashMap<SootMethod, UnitGraph>();
+		for (SootMethod method : c.getMethods()) {
+			Body body = method.retrieveActiveBody();
+			bodies.put(method, body);
+			graphs.put(method, new BriefUnitGraph(body));
+		}
+		if (bodyCache != null) {
+			try {
+				bodyCache.store(c);
+			} catch (IOException e) {
+				System.err.println("Can't write Jimple cache: " + e.getMessage());
+			}
+		}
+
+		// Spark is only needed if some receiver is not resolved within its method
+		HashMap<SootMethod, AllocationSites> allocations = new HashMap<SootMethod, AllocationSites>();
+		boolean needsSpark = !opts.localAllocation || opts.summaries;
+		for (SootMethod method : c.getMethods()) {
+			AllocationSites sites = AllocationSites.compute(bodies.get(method));
+			allocations.put(method, sites);
+			if (!sites.isComplete()) {
+				needsSpark = true;
+			}
+		}
+		metrics.end(phase);
+		PAG pointsToAnalysis = null;
+		if (needsSpark) {
+			phase = metrics.begin(analyzedClass, "spark");
+			pointsToAnalysis = doPointsToAnalysis(c);
+			metrics.end(phase);
+		}
+
+		// Array sizes are looked up by every checker and every tier, so built once
+		AllocationIndex allocationIndex = AllocationIndex.build(allocations);
+
+		// The class budget covers all fixpoints, Soot and Spark cannot be cancelled
+		Budget budget = opts.budget();
 
 		int programCorrectFlag = 1;
 		int divisionByZeroFlag = 1;
+		FailFast failFast = opts.failFast ? new FailFast(analyzedClass, out) : null;
 
+		List<MethodResult> results = new ArrayList<MethodResult>();
+		List<MethodResult> pending = new ArrayList<MethodResult>();
+		HashMap<SootMethod, CheckSiteIndex> indices = new HashMap<SootMethod, CheckSiteIndex>();
+		HashMap<SootMethod, Slice> slices = new HashMap<SootMethod, Slice>();
+		HashMap<MethodResult, VerdictCache.Key> misses = new HashMap<MethodResult, VerdictCache.Key>();
+		HashMap<SootMethod, String> dependencies = new HashMap<SootMethod, String>();
 		for (SootMethod method : c.getMethods()) {
+			MethodResult r = new MethodResult(method);
+			results.add(r);
+
+			// The index is built once and reused by every tier
+			CheckSiteIndex index = new CheckSiteIndex(bodies.get(method),
+					newCheckers(pointsToAnalysis, sitesOf(allocations, method), allocationIndex));
+			indices.put(method, index);
+			if (cache != null) {
+				VerdictCache.Key key = cacheKey(bodies.get(method), index,
+						new BoundsChecker(pointsToAnalysis, sitesOf(allocations, method), allocationIndex),
+						dependencies);
+				if (cache.lookup(key, r)) {
+					if (failFast != null) {
+						failFast.settled(r);
+					}
+					continue;
+				}
+				misses.put(r, key);
+			}
+			if (opts.slicing) {
+				if (index.isEmpty()) {
+					// nothing to check, no fixpoint needed
+					r.boundsSafe = true;
+					r.divisionSafe = true;
+					continue;
+				}
+				slices.put(method, Slice.compute(graphs.get(method), index));
+			}
+			pending.add(r);
+		}
+		// Callees are summarised once, with the most precise domain of the run,
+		// and only if a method is not cached
+		Summaries summaries = null;
+		if (opts.summaries && !pending.isEmpty()) {
+			phase = metrics.begin(analyzedClass, "summaries");
+			Domain domain = opts.domains[opts.domains.length - 1];
+			// summaries are APRON constraints
+			summaries = Summaries.compute(c.getMethods(), domain == Domain.INTERVAL ? Domain.BOX : domain,
+					budget, pool);
+			metrics.end(phase);
+		}
+
+		if (failFast != null) {
+			// the methods most likely to fail a check go to the workers first
+			final HashMap<SootMethod, CheckSiteIndex> sites = indices;
+			Collections.sort(pending, new Comparator<MethodResult>() {
+				@Override
+				public int compare(MethodResult a, MethodResult b) {
+					return failable(sites.get(b.method)) - failable(sites.get(a.method));
+				}
+			});
+		}
+
+		long flowThroughs = 0;
+		long merges = 0;
+
+		// Each tier only re-runs the methods the cheaper tiers could not prove
+		for (Domain domain : opts.domains) {
+			if (failFast != null) {
+				pending = failFast.cancelSettled(pending, indices, null);
+			}
+			if (pending.isEmpty()) {
+				break;
+			}
+			boolean lastTier = domain == opts.domains[opts.domains.length - 1];
+			List<AnalysisTask<MethodAnalysis<?>>> tasks = startAnalyses(c, pending, domain, graphs, indices,
+					slices, summaries, budget);
+			List<MethodResult> unproved = new ArrayList<MethodResult>();
+
+			// Checks run in method order, so verdicts match a sequential run
+			// fixpoints and checks overlap, the Fixpoint events tell them apart
+			phase = metrics.begin(analyzedClass, "tier " + domain);
+			for (int i = 0; i < pending.size(); i++) {
+				MethodResult r = pending.get(i);
+				MethodAnalysis<?> analysis = tasks.get(i).join();
+				flowThroughs += analysis.flowThroughCount;
+				merges += analysis.mergeCount;
+				metrics.method(analysis);
+				if (r.cancelled) {
+					analysis.release();
+					tasks.set(i, null);
+					continue;
+				}
+
+				r.domain = domain;
+				if (analysis.exceeded != null) {
+					String reason = analysis.exceeded + " with " + domain;
+					analysis = degrade(c, r, domain, graphs, indices, slices, summaries, budget);
+					if (analysis == null) {
+						// unproved checks stay MAY_*, more precise tiers would not do better
+						r.degraded = reason + ", unproved checks reported as MAY";
+						if (failFast != null) {
+							failFast.settled(r);
+							failFast.cancelSettled(pending.subList(i + 1, pending.size()), indices,
+									tasks.subList(i + 1, tasks.size()));
+						}
+						continue;
+					}
+					flowThroughs += analysis.flowThroughCount;
+					merges += analysis.mergeCount;
+					metrics.method(analysis);
+					r.degraded = reason + ", analysed with " + analysis.domain;
+					r.domain = analysis.domain;
+				}
+				Checker[] checkers = newCheckers(pointsToAnalysis, sitesOf(allocations, r.method),
+						allocationIndex);
+				if (r.boundsSafe) {
+					checkers[BOUNDS] = null;
+				}
+				if (r.divisionSafe) {
+					checkers[DIVISION] = null;
+				}
+				boolean[] holds = indices.get(r.method).check(analysis, checkers);
+				r.boundsSafe = holds[BOUNDS];
+				r.divisionSafe = holds[DIVISION];
+
+				// the native elements of the method are garbage from here on
+				analysis.release();
+				tasks.set(i, null);
+				NativeMemory.collectIfOver(opts.nativeLimitKb);
+
+				if (!r.isProved() && r.degraded == null && !lastTier) {
+					unproved.add(r);
+				} else if (failFast != null) {
+					failFast.settled(r);
+					failFast.cancelSettled(pending.subList(i + 1, pending.size()), indices,
+							tasks.subList(i + 1, tasks.size()));
+				}
+			}
+			metrics.end(phase);
+			pending = unproved;
+		}
 
-			Analysis analysis = new Analysis(new BriefUnitGraph(method.retrieveActiveBody()), c);
-			analysis.run();
+		// degraded verdicts depend on the load of the machine, so they are not kept
+		for (MethodResult r : misses.keySet()) {
+			if (r.degraded == null && !r.cancelled) {
+				cache.store(misses.get(r), r);
+			}
+		}
 
-			if (!verifyBounds(method, analysis, pointsToAnalysis)) {
+		for (MethodResult r : results) {
+			if (!r.boundsSafe) {
 				programCorrectFlag = 0;
 			}
-			if (!verifyDivisionByZero(method, analysis)) {
+			if (!r.divisionSafe) {
 				divisionByZeroFlag = 0;
 			}
+			if (r.cancelled) {
+				System.err.println(r.method.getSignature() + " cancelled, the verdicts were known");
+			} else if (r.degraded != null) {
+				System.err.println(r.method.getSignature() + " degraded: " + r.degraded);
+			} else if (opts.reportTiers && opts.domains.length > 1) {
+				if (r.domain == null) {
+					System.err.println(r.method.getSignature() + " has no checks");
+				} else {
+					System.err.println(r.method.getSignature()
+							+ (r.isProved() ? " proved by " + r.domain : " not proved"));
+				}
+			}
 		}
 		
+		System.err.println(analyzedClass + ": " + flowThroughs + " flowThrough and " + merges + " merge calls");
+
+		// with -fail-fast, the MAY_* lines are out already
 		if (divisionByZeroFlag == 1) {
-			System.out.println(analyzedClass + " NO_DIV_ZERO");
-		} else {
-			System.out.println(analyzedClass + " MAY_DIV_ZERO");
+			out.println(analyzedClass + " NO_DIV_ZERO");
+		} else if (failFast == null || !failFast.mayDivZero) {
+			out.println(analyzedClass + " MAY_DIV_ZERO");
 		}
 		
 		if (programCorrectFlag == 1) {
-            System.out.println(analyzedClass + " NO_OUT_OF_BOUNDS");
-        } else {
-            System.out.println(analyzedClass + " MAY_OUT_OF_BOUNDS");
+            out.println(analyzedClass + " NO_OUT_OF_BOUNDS");
+        } else if (failFast == null || !failFast.mayOutOfBounds) {
+            out.println(analyzedClass + " MAY_OUT_OF_BOUNDS");
         }
 	}
-	
-	private static boolean verifyDivisionByZero(SootMethod method, Analysis fixPoint) {
-		for (Unit u : method.retrieveActiveBody().getUnits()) {
-			AWrapper state = fixPoint.getFlowBefore(u);
-			try {
-		    		if (state.get().isBottom(Analysis.man))
-	    			// unreachable code
+
+	/*
+	 * The -fail-fast mode of a class: prints a MAY_* line as soon as a method
+	 * settles it, i.e. it has a failed check no later tier can prove, and
+	 * cancels the methods whose remaining checks are all of settled kinds.
+	 */
+	private static class FailFast {
+
+		private final String analyzedClass;
+		private final PrintStream out;
+		boolean mayDivZero = false;
+		boolean mayOutOfBounds = false;
+
+		FailFast(String analyzedClass, PrintStream out) {
+			this.analyzedClass = analyzedClass;
+			this.out = out;
+		}
+
+		/* Takes the final result of a method. */
+		void settled(MethodResult r) {
+			if (!r.divisionSafe && !mayDivZero) {
+				mayDivZero = true;
+				out.println(analyzedClass + " MAY_DIV_ZERO");
+				out.flush();
+			}
+			if (!r.boundsSafe && !mayOutOfBounds) {
+				mayOutOfBounds = true;
+				out.println(analyzedClass + " MAY_OUT_OF_BOUNDS");
+				out.flush();
+			}
+		}
+
+		/* Whether a check of the method could still turn a NO_* verdict into MAY_*. */
+		boolean canChange(MethodResult r, CheckSiteIndex index) {
+			return (!mayOutOfBounds && !r.boundsSafe && index.count(BOUNDS) > 0)
+					|| (!mayDivZero && !r.divisionSafe && index.count(DIVISION) > 0);
+		}
+
+		/*
+		 * Marks the methods that can no longer change the verdicts as cancelled
+		 * and stops their analyses, if they were started. Returns the others.
+		 */
+		List<MethodResult> cancelSettled(List<MethodResult> methods, HashMap<SootMethod, CheckSiteIndex> indices,
+				List<AnalysisTask<MethodAnalysis<?>>> tasks) {
+			List<MethodResult> rest = new ArrayList<MethodResult>();
+			for (int i = 0; i < methods.size(); i++) {
+				MethodResult r = methods.get(i);
+				CheckSiteIndex index = indices.get(r.method);
+				if (r.cancelled) {
+					continue;
+				}
+				if (canChange(r, index)) {
+					rest.add(r);
 					continue;
-			} catch (ApronException e) {
-				e.printStackTrace();
-			} 
-			
-			
-			//TODO: Check that all divisors are not zero
-			for (ValueBox inani: u.getUseBoxes()) {
-				if ( inani.getValue() instanceof JDivExpr ) {
-		
-					Value divisor = ((JDivExpr) inani.getValue()).getOp2();
-					if ( divisor instanceof JimpleLocal ) {
-						Texpr1Node isihlukanisi = new Texpr1VarNode(((JimpleLocal) divisor).getName());
-						try {
-							Interval boundary = state.get().getBound(state.get().getCreationManager(), new Texpr1Intern(state.get().getEnvironment(), isihlukanisi));
-							Interval zero = new Interval(0,0);
-							if ( boundary.cmp(zero) == 0 || boundary.cmp(zero) == 1 || boundary.cmp(zero) == -1 ) return false;
-						} catch (ApronException e) {
-							e.printStackTrace();
-						}
-								
-					} else if (divisor instanceof IntConstant) {
-						if ( ((IntConstant) divisor).value == 0 ) {
-							//System.out.println("Constant used as divisor may be zero. | " + divisor.toString());
-							return false;
-						}
-					}
-					else {
-						System.out.println("Unexpected divisor: " + divisor.toString() + " of type " + divisor.getType().toString());
-					}
+				}
+				r.cancelled = true;
+				// checks of unsettled kinds would all have held, there are none
+				if (index.count(BOUNDS) == 0) {
+					r.boundsSafe = true;
+				}
+				if (index.count(DIVISION) == 0) {
+					r.divisionSafe = true;
+				}
+				if (tasks != null) {
+					tasks.get(i).cancel();
 				}
 			}
-	    }
-		
-		//Return true if the method has no division by zero errors
-	    return true;
+			return rest;
+		}
 	}
 	
-	static List<Interval> paInterval;
-	
-	private static boolean verifyBounds(SootMethod method, Analysis fixPoint,
-			PAG pointsTo) {
-				
-		//TODO: Create a list of all allocation sites for PrinterArray
-		
-		paInterval = new ArrayList<Interval>();
-		
-		for (Unit u : method.retrieveActiveBody().getUnits()) {
-			AWrapper state = fixPoint.getFlowBefore(u);
-		
-			try {
-				if (state.get().isBottom(Analysis.man)) {
-					// unreachable code
-					continue;
-				} 
-			} catch (ApronException e) {
-				e.printStackTrace();
-			} 
-
-			
-			if (u instanceof JInvokeStmt && ((JInvokeStmt) u).getInvokeExpr() instanceof JSpecialInvokeExpr) {
-				// TODO: Get the size of the PrinterArray given as argument to the constructor
-				// Done
-				JSpecialInvokeExpr inkulumo = (JSpecialInvokeExpr) ((JInvokeStmt) u).getInvokeExpr(); 
-				if (inkulumo.getMethod().getDeclaringClass().toString().equals("PrinterArray")) {
-					Value size = inkulumo.getArg(0);
-					if ( size instanceof IntConstant ) {
-						paInterval.add( new Interval (0, ((IntConstant) size).value -1 ));
-					}
-					else {
-						System.out.println("PrinterArray was constructed with an argument that is not a IntConstant: " + size);
-					}
+	/* Check sites of the method that can fail, allocations only record sizes. */
+	private static int failable(CheckSiteIndex index) {
+		return index.count(BOUNDS) + index.count(DIVISION);
+	}
+
+	// Positions of the checkers in the array returned by newCheckers
+	private static final int BOUNDS = 0;
+	private static final int DIVISION = 1;
+
+	/* Checkers keep per-method state, so every run gets fresh ones. */
+	private static Checker[] newCheckers(PAG pointsTo, AllocationSites sites, AllocationIndex index) {
+		return new Checker[] { new BoundsChecker(pointsTo, sites, index), new DivisionChecker() };
+	}
+
+	/* The allocation sites receivers are resolved with, null unless -alloc local. */
+	private static AllocationSites sitesOf(HashMap<SootMethod, AllocationSites> allocations, SootMethod method) {
+		return opts.localAllocation ? allocations.get(method) : null;
+	}
+
+	private static VerdictCache.Key cacheKey(Body body, CheckSiteIndex index, BoundsChecker bounds,
+			HashMap<SootMethod, String> dependencies) {
+		StringBuilder context = new StringBuilder();
+		for (int i = 0; i < index.size(); i++) {
+			context.append(bounds.allocationContext(index.site(i))).append(';');
+		}
+		// the verdict also depends on the summaries of the callees, named by
+		// what they are computed from so that a cached class needs none
+		if (opts.summaries) {
+			for (Unit u : body.getUnits()) {
+				if (((Stmt) u).containsInvokeExpr()) {
+					SootMethod target = ((Stmt) u).getInvokeExpr().getMethod();
+					context.append(Summaries.dependencies(target, dependencies)).append(';');
 				}
+			}
+		}
+		return VerdictCache.key(body, context.toString(), opts.configKey());
+	}
 
+	/*
+	 * Re-runs a method that went over its budget with the cheapest domain that
+	 * is cheaper than the one it ran with, not one of the tiers, and more
+	 * precise than the tiers that already failed on it. Returns null if there
+	 * is none, the class is out of time, or the re-run goes over its budget too.
+	 */
+	private static MethodAnalysis<?> degrade(SootClass c, MethodResult r, Domain domain,
+			HashMap<SootMethod, UnitGraph> graphs, HashMap<SootMethod, CheckSiteIndex> indices,
+			HashMap<SootMethod, Slice> slices, Summaries summaries, Budget budget) {
+		if (budget.classExpired()) {
+			return null;
+		}
+		// a domain no more precise than a tier that failed on the method proves nothing new
+		int tried = -1;
+		for (Domain d : opts.domains) {
+			if (d == domain) {
+				break;
 			}
-			
-			if (u instanceof JInvokeStmt && ((JInvokeStmt) u).getInvokeExpr() instanceof JVirtualInvokeExpr) {
-				
-				JInvokeStmt jInvStmt = (JInvokeStmt)u;
-				
-				JVirtualInvokeExpr invokeExpr = (JVirtualInvokeExpr)jInvStmt.getInvokeExpr();
-				
-				Local base = (Local) invokeExpr.getBase();
-				DoublePointsToSet pts = (DoublePointsToSet) pointsTo
-						.reachingObjects(base);
-				
-				if (invokeExpr.getMethod().getName().equals(Analysis.functionName)) {
-					
-					// TODO: Check whether the 'sendJob' method's argument is within bounds
-					// Done
-					Value v = invokeExpr.getArg(0);
-					Interval arrayIndex = Analysis.getInterval(state, v);
-					
-					
-					// Visit all allocation sites that the base pointer may reference
-					MyP2SetVisitor visitor = new MyP2SetVisitor(arrayIndex);
-					if (! pts.forall(visitor)){
-						return false;
-					}
-				}
+			tried = Math.max(tried, d.precision());
+		}
+		for (Domain cheaper : Domain.values()) {
+			if (cheaper.ordinal() >= domain.ordinal()) {
+				break;
 			}
+			if (Arrays.asList(opts.domains).contains(cheaper) || cheaper.precision() <= tried) {
+				continue;
+			}
+			AnalysisTask<MethodAnalysis<?>> task = startAnalyses(c, Collections.singletonList(r), cheaper, graphs, indices,
+					slices, summaries, budget).get(0);
+			MethodAnalysis<?> analysis = task.join();
+			return analysis.exceeded == null ? analysis : null;
 		}
+		return null;
+	}
 
-		return true;
+	private static List<AnalysisTask<MethodAnalysis<?>>> startAnalyses(SootClass c,
+			List<MethodResult> methods, Domain domain, HashMap<SootMethod, UnitGraph> graphs,
+			HashMap<SootMethod, CheckSiteIndex> indices, HashMap<SootMethod, Slice> slices,
+			Summaries summaries, Budget budget) {
+		// Soot is not thread safe, so all analyses are set up here
+		List<AnalysisTask<MethodAnalysis<?>>> tasks =
+				new ArrayList<AnalysisTask<MethodAnalysis<?>>>(methods.size());
+		for (MethodResult r : methods) {
+			MethodAnalysis<?> analysis;
+			if (domain == Domain.INTERVAL) {
+				// no APRON element is created for the method
+				analysis = new IntervalAnalysis(graphs.get(r.method), slices.get(r.method));
+			} else {
+				Analysis a = new Analysis(graphs.get(r.method), c, domain, opts, slices.get(r.method),
+						summaries);
+				a.measureLoopHeads = Metrics.measuring(opts);
+				// the checks only read the states before their sites
+				a.keep = indices.get(r.method).siteSet();
+				a.sparse = opts.sparse;
+				analysis = a;
+			}
+			analysis.budget = budget;
+			tasks.add(new AnalysisTask<MethodAnalysis<?>>(analysis));
+		}
+		for (AnalysisTask<MethodAnalysis<?>> task : tasks) {
+			pool.execute(task);
+		}
+		return tasks;
 	}
 
-	private static SootClass loadClass(String name) {
+	static SootClass loadClass(String name) {
 		SootClass c = Scene.v().loadClassAndSupport(name);
 		c.setApplicationClass();
 		return c;
 	}
 
-	private static PAG doPointsToAnalysis(SootClass c) {
+	static PAG doPointsToAnalysis(SootClass c) {
 		Scene.v().setEntryPoints(c.getMethods());
 
 		HashMap<String, String> options = new HashMap<String, String>();
@@ -207,23 +555,3 @@ public class Verifier {
 		return pag;
 	}	
 }
-
-class MyP2SetVisitor extends P2SetVisitor{
-	
-	public MyP2SetVisitor (Interval i) {
-		this.arrayIndex = i;
-		this.returnValue = true;
-	}
-	
-	private Interval arrayIndex; 
-	
-	@Override
-	public void visit(Node arg0) {
-		//TODO: Check whether the argument given to sendJob is within bounds
-		// Done
-		Interval paInterval = Verifier.paInterval.get(arg0.getNumber()-1);
-		if (!( paInterval.cmp(this.arrayIndex) == 0 || paInterval.cmp(this.arrayIndex) == 1 )) {
-			this.returnValue = false;
-		}
-	}
-}
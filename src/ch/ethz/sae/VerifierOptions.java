@@ -0,0 +1,248 @@
+package ch.ethz.sae;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/* Command line options of the verifier. */
+public class VerifierOptions {
+
+	public static final String USAGE =
+			"Usage: java -classpath soot-2.5.0.jar:./bin ch.ethz.sae.Verifier [options] <class to test>...\n"
+			+ "       java -classpath soot-2.5.0.jar:./bin ch.ethz.sae.Verifier [options] -serve <port>\n"
+			+ "  -serve <port>           keep Soot and APRON loaded and verify the classes named\n"
+			+ "                          by each line sent to the port on 127.0.0.1\n"
+			+ "  -batch <dir|jar|list>   verify every class in a directory, jar or class list file\n"
+			+ "  -threads <n>            number of methods analysed in parallel (default: all cores)\n"
+			+ "  -domain <d>             interval, box, octagon, polka or tiered, which tries\n"
+			+ "                          all of them in this order on methods left unproved\n"
+			+ "                          (default: interval, then polka); interval runs in\n"
+			+ "                          plain Java, APRON is only loaded for the others\n"
+			+ "  -packing                analyse groups of related variables in separate elements\n"
+			+ "  -slice                  only analyse the code the checks depend on\n"
+			+ "  -sparse                 only store the states at loop heads and check sites\n"
+			+ "                          during a fixpoint and recompute the others when needed\n"
+			+ "  -summaries              use summaries of the called methods instead of\n"
+			+ "                          forgetting the results of calls\n"
+			+ "  -alloc <a>              spark (default) or local, which resolves PrinterArray\n"
+			+ "                          receivers within their method and only runs Spark\n"
+			+ "                          for classes where a receiver comes from elsewhere\n"
+			+ "  -cache <dir>            reuse the verdicts of unchanged methods from earlier runs\n"
+			+ "  -jimple-cache <dir>     reuse the Jimple of unchanged class files from earlier runs\n"
+			+ "  -fail-fast              print every MAY_* verdict as soon as it is known, start\n"
+			+ "                          with the methods with the most checks and stop the\n"
+			+ "                          analyses that can no longer change the verdicts\n"
+			+ "  -metrics <file>         write the time and APRON calls of every fixpoint as JSON\n"
+			+ "  -native-limit <MB>      collect unreachable APRON elements once the memory outside\n"
+			+ "                          the Java heap is over this (default 1024, 0 to never)\n"
+			+ "  -timeout <ms>           time budget of a method's fixpoint\n"
+			+ "  -class-timeout <ms>     time budget of all fixpoints of a class\n"
+			+ "  -memory <size>          largest APRON size of a loop head state of a method\n"
+			+ "                          A method over its budget is re-run with a cheaper domain\n"
+			+ "                          more precise than the tiers tried before, otherwise its\n"
+			+ "                          unproved checks are MAY_*";
+
+	// classes to verify, in the order they are reported
+	public List<String> classes = new ArrayList<String>();
+
+	public int threads = Runtime.getRuntime().availableProcessors();
+
+	// domains tried in turn on the methods the previous ones could not prove
+	public Domain[] domains = { Domain.INTERVAL, Domain.POLKA };
+
+	// print the tier that proved each method, with -domain or -metrics
+	public boolean reportTiers = false;
+
+	// split the variables of a method into packs of related variables
+	public boolean packing = false;
+
+	// skip methods without checks and code the checks do not depend on
+	public boolean slicing = false;
+
+	// store only the states at loop heads and check sites during a fixpoint
+	public boolean sparse = false;
+
+	// apply callee summaries at call sites
+	public boolean summaries = false;
+
+	// resolve PrinterArray receivers intraprocedurally, Spark only as a fallback
+	public boolean localAllocation = false;
+
+	// directory of the verdict cache, null if verdicts are not cached
+	public File cache = null;
+
+	// directory of the Jimple cache, null if classes are always read from bytecode
+	public File jimpleCache = null;
+
+	// JSON summary of the run, null if not wanted
+	public File metrics = null;
+
+	// print MAY_* verdicts early and stop analyses that can no longer change them
+	public boolean failFast = false;
+
+	// loopback port to serve requests on, 0 to verify the classes and exit
+	public int port = 0;
+
+	// budgets, 0 for no limit
+	public long methodTimeout = 0; // ms
+	public long classTimeout = 0; // ms
+	public long memory = 0;
+
+	// memory outside the Java heap that makes the verifier collect, 0 for never
+	public long nativeLimitKb = 1024 * 1024;
+
+	/* Returns null if the arguments are malformed. */
+	public static VerifierOptions parse(String[] args) throws IOException {
+		VerifierOptions opts = new VerifierOptions();
+
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-batch")) {
+				if (++i == args.length) {
+					return null;
+				}
+				opts.classes.addAll(ClassCollector.collect(args[i]));
+			} else if (arg.equals("-threads")) {
+				if (++i == args.length) {
+					return null;
+				}
+				try {
+					opts.threads = Integer.parseInt(args[i]);
+				} catch (NumberFormatException e) {
+					return null;
+				}
+				if (opts.threads < 1) {
+					return null;
+				}
+			} else if (arg.equals("-domain")) {
+				if (++i == args.length) {
+					return null;
+				}
+				opts.reportTiers = true;
+				if (args[i].equals("tiered")) {
+					opts.domains = Domain.values();
+				} else {
+					try {
+						opts.domains = new Domain[] { Domain.valueOf(args[i].toUpperCase()) };
+					} catch (IllegalArgumentException e) {
+						return null;
+					}
+				}
+			} else if (arg.equals("-packing")) {
+				opts.packing = true;
+			} else if (arg.equals("-slice")) {
+				opts.slicing = true;
+			} else if (arg.equals("-sparse")) {
+				opts.sparse = true;
+			} else if (arg.equals("-summaries")) {
+				opts.summaries = true;
+			} else if (arg.equals("-alloc")) {
+				if (++i == args.length) {
+					return null;
+				}
+				if (args[i].equals("local")) {
+					opts.localAllocation = true;
+				} else if (args[i].equals("spark")) {
+					opts.localAllocation = false;
+				} else {
+					return null;
+				}
+			} else if (arg.equals("-cache")) {
+				if (++i == args.length) {
+					return null;
+				}
+				opts.cache = new File(args[i]);
+			} else if (arg.equals("-native-limit")) {
+				if (++i == args.length) {
+					return null;
+				}
+				try {
+					opts.nativeLimitKb = Long.parseLong(args[i]) * 1024;
+				} catch (NumberFormatException e) {
+					return null;
+				}
+				if (opts.nativeLimitKb < 0) {
+					return null;
+				}
+			} else if (arg.equals("-serve")) {
+				if (++i == args.length) {
+					return null;
+				}
+				try {
+					opts.port = Integer.parseInt(args[i]);
+				} catch (NumberFormatException e) {
+					return null;
+				}
+				if (opts.port < 1 || opts.port > 65535) {
+					return null;
+				}
+			} else if (arg.equals("-jimple-cache")) {
+				if (++i == args.length) {
+					return null;
+				}
+				opts.jimpleCache = new File(args[i]);
+			} else if (arg.equals("-fail-fast")) {
+				opts.failFast = true;
+			} else if (arg.equals("-metrics")) {
+				if (++i == args.length) {
+					return null;
+				}
+				opts.metrics = new File(args[i]);
+				opts.reportTiers = true;
+			} else if (arg.equals("-timeout") || arg.equals("-class-timeout") || arg.equals("-memory")) {
+				if (++i == args.length) {
+					return null;
+				}
+				long limit;
+				try {
+					limit = Long.parseLong(args[i]);
+				} catch (NumberFormatException e) {
+					return null;
+				}
+				if (limit < 1) {
+					return null;
+				}
+				if (arg.equals("-timeout")) {
+					opts.methodTimeout = limit;
+				} else if (arg.equals("-class-timeout")) {
+					opts.classTimeout = limit;
+				} else {
+					opts.memory = limit;
+				}
+			} else if (arg.startsWith("-")) {
+				return null;
+			} else {
+				opts.classes.add(arg);
+			}
+		}
+
+		// a server only verifies the classes its requests name
+		if (opts.classes.isEmpty() == (opts.port == 0)) {
+			return null;
+		}
+		return opts;
+	}
+
+	/* The budget of a class whose analysis starts now. */
+	public Budget budget() {
+		long deadline = Long.MAX_VALUE;
+		if (classTimeout > 0) {
+			deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(classTimeout);
+		}
+		return new Budget(TimeUnit.MILLISECONDS.toNanos(methodTimeout), deadline, memory);
+	}
+
+	/*
+	 * The settings a verdict depends on, cached verdicts are only reused if
+	 * they match. Budgets are not part of it, degraded verdicts are not cached.
+	 */
+	public String configKey() {
+		return "domains=" + Arrays.toString(domains) + ";packing=" + packing + ";slicing=" + slicing
+				+ ";sparse=" + sparse + ";summaries=" + summaries + ";alloc=" + (localAllocation ? "local" : "spark")
+				+ ";widening=" + Analysis.WIDENING_THRESHOLD + "/" + Analysis.WIDENING_DELAY
+				+ ";narrowing=" + Analysis.NARROWING_STEPS;
+	}
+}
@@ -0,0 +1,96 @@
+package ch.ethz.sae;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import soot.Unit;
+import soot.toolkits.graph.UnitGraph;
+
+/*
+ * Bourdoncle's weak topological ordering of a method. Every element is a
+ * unit or a component, i.e. a loop head followed by the ordering of the loop
+ * body. Components nest like the loops of the method, so iterating them
+ * recursively stabilises inner loops before outer ones.
+ */
+public class Wto {
+
+	public static class Element {
+		public final Unit head;
+		public final List<Element> body; // null for plain units
+
+		Element(Unit head, List<Element> body) {
+			this.head = head;
+			this.body = body;
+		}
+
+		public boolean isComponent() {
+			return body != null;
+		}
+	}
+
+	private final UnitGraph g;
+	private final HashMap<Unit, Integer> dfn = new HashMap<Unit, Integer>();
+	private final LinkedList<Unit> stack = new LinkedList<Unit>();
+	private int num = 0;
+
+	private Wto(UnitGraph g) {
+		this.g = g;
+		for (Unit u : g) {
+			dfn.put(u, 0);
+		}
+	}
+
+	/* The top level elements of the ordering, starting at the heads of the graph. */
+	public static List<Element> compute(UnitGraph g) {
+		Wto wto = new Wto(g);
+		LinkedList<Element> partition = new LinkedList<Element>();
+		// heads are visited last to first, so the first one ends up in front
+		List<Unit> heads = new ArrayList<Unit>(g.getHeads());
+		for (int i = heads.size() - 1; i >= 0; i--) {
+			if (wto.dfn.get(heads.get(i)) == 0) {
+				wto.visit(heads.get(i), partition);
+			}
+		}
+		return partition;
+	}
+
+	private int visit(Unit v, LinkedList<Element> partition) {
+		stack.addFirst(v);
+		dfn.put(v, ++num);
+		int head = num;
+		boolean loop = false;
+		for (Unit w : g.getSuccsOf(v)) {
+			int min = dfn.get(w) == 0 ? visit(w, partition) : dfn.get(w);
+			if (min <= head) {
+				head = min;
+				loop = true;
+			}
+		}
+		if (head == dfn.get(v)) {
+			dfn.put(v, Integer.MAX_VALUE);
+			Unit element = stack.removeFirst();
+			if (loop) {
+				while (element != v) {
+					dfn.put(element, 0);
+					element = stack.removeFirst();
+				}
+				partition.addFirst(component(v));
+			} else {
+				partition.addFirst(new Element(v, null));
+			}
+		}
+		return head;
+	}
+
+	private Element component(Unit v) {
+		LinkedList<Element> partition = new LinkedList<Element>();
+		for (Unit w : g.getSuccsOf(v)) {
+			if (dfn.get(w) == 0) {
+				visit(w, partition);
+			}
+		}
+		return new Element(v, partition);
+	}
+}